@@ -78,10 +78,17 @@ public class LookForMediaJob extends JobService {
     }
 
     private void scanFolder(String path) {
-        String[] list = new File(path).list(new ImageFileFilter(true));
-        if (list != null)
-            MediaHelper.scanFile(getApplicationContext(), list);
+        // NOTE: only names are checked here, the media scanner has to open the files anyway
+        String[] names = new File(path).list();
+        if (names == null) return;
 
+        ArrayList<String> list = new ArrayList<>(names.length);
+        for (String name : names)
+            if (ImageFileFilter.isMedia(name, true))
+                list.add(new File(path, name).getPath());
+
+        if (!list.isEmpty())
+            MediaHelper.scanFile(getApplicationContext(), list.toArray(new String[list.size()]));
     }
 
     @Override
@@ -24,6 +24,7 @@ import android.support.v4.print.PrintHelper;
 import android.support.v4.view.ViewPager;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.widget.Toolbar;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -52,17 +53,19 @@ import org.horaapps.leafpic.data.Album;
 import org.horaapps.leafpic.data.AlbumSettings;
 import org.horaapps.leafpic.data.Media;
 import org.horaapps.leafpic.data.MediaHelper;
+import org.horaapps.leafpic.data.MediaSessionRegistry;
 import org.horaapps.leafpic.data.StorageHelper;
-import org.horaapps.leafpic.data.filter.MediaFilter;
-import org.horaapps.leafpic.data.provider.CPHelper;
+import org.horaapps.leafpic.data.provider.MediaRepository;
 import org.horaapps.leafpic.data.sort.MediaComparators;
 import org.horaapps.leafpic.fragments.BaseMediaFragment;
 import org.horaapps.leafpic.fragments.ImageFragment;
+import org.horaapps.leafpic.progress.ProgressBottomSheet;
 import org.horaapps.leafpic.util.AlertDialogsHelper;
 import org.horaapps.leafpic.util.AnimationUtils;
 import org.horaapps.leafpic.util.DeviceUtils;
 import org.horaapps.leafpic.util.LegacyCompatFileProvider;
 import org.horaapps.leafpic.util.Measure;
+import org.horaapps.leafpic.util.MediaUtils;
 import org.horaapps.leafpic.util.Security;
 import org.horaapps.leafpic.util.StringUtils;
 import org.horaapps.leafpic.util.preferences.Prefs;
@@ -71,7 +74,6 @@ import org.horaapps.liz.ColorPalette;
 
 import java.io.File;
 import java.io.InputStream;
-import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 
@@ -99,6 +101,7 @@ public class SingleMediaActivity extends SharedMediaActivity implements BaseMedi
     public static final String EXTRA_ARGS_ALBUM = "args_album";
     public static final String EXTRA_ARGS_MEDIA = "args_media";
     public static final String EXTRA_ARGS_POSITION = "args_position";
+    public static final String EXTRA_ARGS_SESSION = "args_session";
 
     @BindView(R.id.photos_pager) HackyViewPager mViewPager;
     @BindView(R.id.PhotoPager_Layout) RelativeLayout activityBackground;
@@ -109,6 +112,7 @@ public class SingleMediaActivity extends SharedMediaActivity implements BaseMedi
 
     private Album album;
     private ArrayList<Media> media;
+    private String session = null;
     private MediaPagerAdapter adapter;
     private boolean isSlideShowOn = false;
 
@@ -116,15 +120,26 @@ public class SingleMediaActivity extends SharedMediaActivity implements BaseMedi
 
     public static void startActivity(@NonNull Context context,
                                      @Nullable Parcelable album,
-                                     @Nullable Serializable media,
+                                     @NonNull ArrayList<Media> media,
                                      int position) {
+        context.startActivity(newIntent(context, album, media, position));
+    }
 
+    /**
+     * The list is shared through {@link MediaSessionRegistry}, only the clicked media travels
+     * in the Intent, to reload the album if the process is gone when the activity is recreated.
+     */
+    public static Intent newIntent(@NonNull Context context,
+                                   @Nullable Parcelable album,
+                                   @NonNull ArrayList<Media> media,
+                                   int position) {
         Intent intent = new Intent(context, SingleMediaActivity.class);
         intent.putExtra(EXTRA_ARGS_ALBUM, album);
         intent.setAction(ACTION_OPEN_ALBUM);
-        intent.putExtra(EXTRA_ARGS_MEDIA, media);
+        intent.putExtra(EXTRA_ARGS_SESSION, MediaSessionRegistry.publish(media));
+        intent.putExtra(EXTRA_ARGS_MEDIA, media.get(position));
         intent.putExtra(EXTRA_ARGS_POSITION, position);
-        context.startActivity(intent);
+        return intent;
     }
 
     @Override
@@ -166,9 +181,15 @@ public class SingleMediaActivity extends SharedMediaActivity implements BaseMedi
     }
 
     private void loadAlbum(Intent intent) {
+        session = intent.getStringExtra(EXTRA_ARGS_SESSION);
+        media = MediaSessionRegistry.attach(session);
+        if (media == null) {
+            // the process was killed in the meantime, the list has to be loaded again
+            loadAlbumsLazy(intent);
+            return;
+        }
         album = intent.getParcelableExtra(EXTRA_ARGS_ALBUM);
         position = intent.getIntExtra(EXTRA_ARGS_POSITION, 0);
-        media = intent.getParcelableArrayListExtra(EXTRA_ARGS_MEDIA);
     }
 
     private void loadAlbumsLazy(Intent intent) {
@@ -181,10 +202,11 @@ public class SingleMediaActivity extends SharedMediaActivity implements BaseMedi
 
         ArrayList<Media> list = new ArrayList<>();
 
-        Disposable disposable = CPHelper.getMedia(getApplicationContext(), album)
+        Disposable disposable = MediaRepository.getMedia(getApplicationContext(), album, album.filterMode())
                 .subscribeOn(Schedulers.io())
+                // NOTE: m may come from a path, match it by path too
+                .filter(media -> !media.equals(m) && !TextUtils.equals(media.getPath(), m.getPath()))
                 .observeOn(AndroidSchedulers.mainThread())
-                .filter(media -> MediaFilter.getFilter(album.filterMode()).accept(media) && !media.equals(m))
                 .subscribe(ma -> {
                             int i = Collections.binarySearch(
                                     list, ma, MediaComparators.getComparator(album.settings));
@@ -645,19 +667,7 @@ public class SingleMediaActivity extends SharedMediaActivity implements BaseMedi
                 break;
 
             case R.id.action_details:
-
-                final AlertDialog detailsDialog = AlertDialogsHelper.getDetailsDialog(this, getCurrentMedia());
-
-                detailsDialog.setButton(DialogInterface.BUTTON_POSITIVE, getString(R.string
-                        .ok_action).toUpperCase(), (dialog, which) -> dialog.dismiss());
-
-                detailsDialog.setButton(DialogInterface.BUTTON_NEUTRAL, getString(R.string.fix_date).toUpperCase(), (dialog, which) -> {
-                    // todo
-                    //if (!getCurrentMedia().fixDate())
-                    Toast.makeText(SingleMediaActivity.this, R.string.unable_to_fix_date, Toast.LENGTH_SHORT).show();
-                });
-
-                detailsDialog.show();
+                showDetails();
                 break;
 
             case R.id.action_settings:
@@ -696,6 +706,38 @@ public class SingleMediaActivity extends SharedMediaActivity implements BaseMedi
         return super.onOptionsItemSelected(item);
     }
 
+    private void showDetails() {
+        final AlertDialog detailsDialog = AlertDialogsHelper.getDetailsDialog(this, getCurrentMedia());
+
+        detailsDialog.setButton(DialogInterface.BUTTON_POSITIVE, getString(R.string
+                .ok_action).toUpperCase(), (dialog, which) -> dialog.dismiss());
+
+        detailsDialog.setButton(DialogInterface.BUTTON_NEUTRAL, getString(R.string.fix_date).toUpperCase(), (dialog, which) ->
+                MediaUtils.repairDates(this, Collections.singletonList(getCurrentMedia()), getSupportFragmentManager(),
+                        new ProgressBottomSheet.Listener<Media>() {
+                            boolean repaired = false;
+
+                            @Override
+                            public void onCompleted() {
+                                // show the details again, with the new date
+                                if (repaired && !isFinishing()) showDetails();
+                            }
+
+                            @Override
+                            public void onProgress(Media item) {
+                                // NOTE: the repaired media is a copy, it replaces the one of the list
+                                for (int i = 0; i < media.size(); i++)
+                                    if (media.get(i).getId() == item.getId() && TextUtils.equals(media.get(i).getPath(), item.getPath())) {
+                                        media.set(i, item);
+                                        repaired = true;
+                                        break;
+                                    }
+                            }
+                        }));
+
+        detailsDialog.show();
+    }
+
     public Media getCurrentMedia() {
         return media.get(position);
     }
@@ -838,6 +880,7 @@ public class SingleMediaActivity extends SharedMediaActivity implements BaseMedi
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (isFinishing()) MediaSessionRegistry.release(session);
         handler.removeCallbacks(slideShowRunnable);
         handler = null;
     }
@@ -21,6 +21,7 @@ import org.horaapps.leafpic.R;
 import org.horaapps.leafpic.data.Album;
 import org.horaapps.leafpic.data.AlbumsHelper;
 import org.horaapps.leafpic.data.Media;
+import org.horaapps.leafpic.data.filter.ExcludedFoldersFilter;
 import org.horaapps.leafpic.data.sort.AlbumsComparators;
 import org.horaapps.leafpic.data.sort.SortingMode;
 import org.horaapps.leafpic.data.sort.SortingOrder;
@@ -176,16 +177,16 @@ public class AlbumsAdapter extends ThemedAdapter<AlbumsAdapter.ViewHolder> {
         notifyDataSetChanged();
     }
 
-    public void removeAlbumsThatStartsWith(String path){
+    public void removeExcludedAlbums(ExcludedFoldersFilter excluded){
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
-            albums.removeIf(album -> album.getPath().startsWith(path));
+            albums.removeIf(album -> excluded.isExcluded(album.getPath()));
         else {
             Iterator<Album> iter = albums.iterator();
 
             while (iter.hasNext()) {
                 Album album = iter.next();
 
-                if (album.getPath().startsWith(path))
+                if (excluded.isExcluded(album.getPath()))
                     iter.remove();
             }
         }
@@ -345,6 +346,13 @@ public class AlbumsAdapter extends ThemedAdapter<AlbumsAdapter.ViewHolder> {
 
     }
 
+    /**
+     * Add a chunk of albums already sorted with the current sorting, see {@link org.horaapps.leafpic.util.RxBatch}
+     */
+    public void addAll(List<Album> chunk) {
+        SortedMerge.merge(this, albums, chunk, AlbumsComparators.getComparator(sortingMode, sortingOrder));
+    }
+
     private void reverseOrder() {
         int z = 0, size = getItemCount();
         while (z < size && albums.get(z).isPinned())
@@ -0,0 +1,169 @@
+package org.horaapps.leafpic.adapters;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+
+import io.reactivex.Observable;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Replaces the content of an adapter with a new one, building it and computing the difference
+ * on a background thread, then dispatching only the insertions, removals, moves and changes.
+ * <p>
+ * Same idea of AsyncListDiffer, but the content is whatever the adapter shows (a list, a
+ * timeline with its headers...), see {@link Target}. If the adapter content changes while the
+ * diff is running the result is stale, and the new content is applied with a full refresh instead.
+ * Only the latest submitted content is applied.
+ *
+ * @param <S> what is submitted, e.g. the new media
+ * @param <T> what the adapter shows, built from it
+ */
+public final class AsyncDiffer<S, T> {
+
+    public interface Target<S, T> {
+        /**
+         * @return what the adapter shows now, null if nothing yet. Main thread
+         */
+        @Nullable T getContent();
+
+        /**
+         * @return true if the adapter still shows the content returned by {@link #getContent()}. Main thread
+         */
+        boolean isShowing(@NonNull T content);
+
+        /**
+         * @return the content to show for a submitted source. Background thread
+         */
+        @NonNull T build(@NonNull S source);
+
+        /**
+         * @return the number of adapter items of the content
+         */
+        int getItemCount(@NonNull T content);
+
+        /**
+         * @return the callback telling which items of two contents stand for the same entity. Background thread
+         */
+        @NonNull DiffUtil.Callback getDiffCallback(@NonNull T oldContent, @NonNull T newContent);
+
+        /**
+         * Make the adapter show the content, the differ does the notifications. Main thread
+         * NOTE: it can show it differently (e.g. with the grouping chosen meanwhile) only if it
+         * does not show any more the one the diff started from
+         */
+        void setContent(@NonNull T content);
+    }
+
+    private final RecyclerView.Adapter<?> adapter;
+    private final Target<S, T> target;
+    // the diff still running and its source, null when there is none
+    @Nullable private Disposable diffing = null;
+    @Nullable private S pending = null;
+    @Nullable private Runnable pendingBeforeApply, pendingOnApplied;
+
+    public AsyncDiffer(@NonNull RecyclerView.Adapter<?> adapter, @NonNull Target<S, T> target) {
+        this.adapter = adapter;
+        this.target = target;
+    }
+
+    /**
+     * @return the source of the diff still running, null if there is none
+     */
+    @Nullable
+    public S getPending() {
+        return pending;
+    }
+
+    /**
+     * Drop any diff still running, its result will not be applied.
+     */
+    public void cancel() {
+        if (diffing != null) diffing.dispose();
+        diffing = null;
+        pending = null;
+        pendingBeforeApply = pendingOnApplied = null;
+    }
+
+    /**
+     * Drop any diff still running and apply its content right away with a full refresh,
+     * e.g. when the adapter is detached from its RecyclerView.
+     */
+    public void flush() {
+        S source = pending;
+        Runnable beforeApply = pendingBeforeApply, onApplied = pendingOnApplied;
+        cancel();
+        if (source != null) apply(target.build(source), null, true, beforeApply, onApplied);
+    }
+
+    /**
+     * @param source        the new content, it must not be modified afterwards
+     * @param beforeApply   run on the main thread right before the adapter content is replaced
+     * @param onApplied     run on the main thread once the adapter shows the new content
+     */
+    public void submit(@NonNull S source, @Nullable Runnable beforeApply, @Nullable Runnable onApplied) {
+        cancel();
+        T current = target.getContent();
+        pending = source;
+        pendingBeforeApply = beforeApply;
+        pendingOnApplied = onApplied;
+
+        diffing = Observable.fromCallable(() -> {
+            T next = target.build(source);
+            if (current == null || target.getItemCount(current) == 0 || target.getItemCount(next) == 0)
+                return new Diffed<>(next, null);
+            try {
+                return new Diffed<>(next, DiffUtil.calculateDiff(target.getDiffCallback(current, next), true));
+            } catch (RuntimeException e) {
+                // NOTE: the new content is shown anyway, with a full refresh
+                e.printStackTrace();
+                return new Diffed<>(next, null);
+            }
+        })
+                .subscribeOn(Schedulers.computation())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(diffed -> {
+                    cancel();
+                    boolean stale = current != null && !target.isShowing(current);
+                    apply(diffed.content, diffed.result, stale, beforeApply, onApplied);
+                }, throwable -> {
+                    throwable.printStackTrace();
+                    // NOTE: the content could not be built off the main thread, build it here
+                    flush();
+                });
+    }
+
+    /**
+     * @param result the diff to dispatch, null if there is none
+     * @param stale  true to refresh everything, the adapter does not show what the diff started from
+     */
+    private void apply(T content, @Nullable DiffUtil.DiffResult result, boolean stale,
+                       @Nullable Runnable beforeApply, @Nullable Runnable onApplied) {
+        int oldCount = adapter.getItemCount();
+        if (beforeApply != null) beforeApply.run();
+        target.setContent(content);
+        int newCount = adapter.getItemCount();
+
+        if (result != null && !stale) result.dispatchUpdatesTo(adapter);
+        else if (stale || (oldCount > 0 && newCount > 0)) adapter.notifyDataSetChanged();
+        else {
+            // nothing to compare, a single range notification is enough
+            if (oldCount > 0) adapter.notifyItemRangeRemoved(0, oldCount);
+            if (newCount > 0) adapter.notifyItemRangeInserted(0, newCount);
+        }
+        if (onApplied != null) onApplied.run();
+    }
+
+    private static final class Diffed<T> {
+        final T content;
+        @Nullable final DiffUtil.DiffResult result;
+
+        Diffed(T content, @Nullable DiffUtil.DiffResult result) {
+            this.content = content;
+            this.result = result;
+        }
+    }
+}
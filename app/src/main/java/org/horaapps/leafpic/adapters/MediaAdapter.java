@@ -4,8 +4,10 @@ import android.content.Context;
 import android.graphics.Color;
 import android.graphics.PorterDuff;
 import android.graphics.drawable.Drawable;
-import android.os.Build;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -18,11 +20,13 @@ import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.bumptech.glide.request.RequestOptions;
 import com.mikepenz.community_material_typeface_library.CommunityMaterial;
 import com.mikepenz.google_material_typeface_library.GoogleMaterial;
+import com.turingtechnologies.materialscrollbar.ICustomAdapter;
 
 import org.horaapps.leafpic.R;
 import org.horaapps.leafpic.data.Album;
 import org.horaapps.leafpic.data.Media;
 import org.horaapps.leafpic.data.sort.MediaComparators;
+import org.horaapps.leafpic.data.sort.MediaSorter;
 import org.horaapps.leafpic.data.sort.SortingMode;
 import org.horaapps.leafpic.data.sort.SortingOrder;
 import org.horaapps.leafpic.items.ActionsListener;
@@ -39,24 +43,41 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
+import io.reactivex.Observable;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
 
 /**
  * Adapter used to display Media Items.
  * <p>
  * TODO: This class needs a major cleanup. Remove code from onBindViewHolder!
  */
-public class MediaAdapter extends ThemedAdapter<MediaAdapter.ViewHolder> {
+public class MediaAdapter extends ThemedAdapter<MediaAdapter.ViewHolder> implements ICustomAdapter {
 
     private final ArrayList<Media> media;
-    private int selectedCount = 0;
+    private final SelectionModel selection = new SelectionModel();
 
     private SortingOrder sortingOrder;
     private SortingMode sortingMode;
+    // NOTE: keeps sort keys and permutations of the current media, dropped on every change of the list
+    private MediaSorter sorter = null;
+    // the permutation being sorted off the main thread, disposed by a newer sort
+    private Disposable sorting = null;
+    // id of the media -> position in the list, rebuilt lazily after the list changes
+    private final HashMap<Long, Integer> positions = new HashMap<>();
+    private boolean positionsValid = false;
+    // sections of the current media for the fast scroller, rebuilt lazily after the list changes
+    private SectionIndex sections = null;
+    private final PendingRemovals pendingRemovals = new PendingRemovals(this::removeAll);
+    private final AsyncDiffer<List<Media>, List<Media>> differ;
 
     private Drawable placeholder;
     private final ActionsListener actionsListener;
@@ -72,6 +93,44 @@ public class MediaAdapter extends ThemedAdapter<MediaAdapter.ViewHolder> {
     public MediaAdapter(Context context, SortingMode sortingMode, SortingOrder sortingOrder, ActionsListener actionsListener) {
         super(context);
         media = new ArrayList<>();
+        differ = new AsyncDiffer<>(this, new AsyncDiffer.Target<List<Media>, List<Media>>() {
+            @Override
+            public List<Media> getContent() {
+                // NOTE: a copy, the list of the adapter is changed in place
+                return new ArrayList<>(media);
+            }
+
+            @Override
+            public boolean isShowing(@NonNull List<Media> content) {
+                if (content.size() != media.size()) return false;
+                for (int i = 0; i < content.size(); i++)
+                    if (content.get(i) != media.get(i)) return false;
+                return true;
+            }
+
+            @NonNull
+            @Override
+            public List<Media> build(@NonNull List<Media> source) {
+                return source;
+            }
+
+            @Override
+            public int getItemCount(@NonNull List<Media> content) {
+                return content.size();
+            }
+
+            @NonNull
+            @Override
+            public DiffUtil.Callback getDiffCallback(@NonNull List<Media> oldContent, @NonNull List<Media> newContent) {
+                return new MediaDiff(oldContent, newContent);
+            }
+
+            @Override
+            public void setContent(@NonNull List<Media> content) {
+                media.clear();
+                media.addAll(content);
+            }
+        });
         this.sortingMode = sortingMode;
         this.sortingOrder = sortingOrder;
         placeholder = getThemeHelper().getPlaceHolder();
@@ -81,20 +140,121 @@ public class MediaAdapter extends ThemedAdapter<MediaAdapter.ViewHolder> {
         this.context = context;
     }
 
+    /**
+     * Sort the media with the current mode and order: the permutation is sorted on a background
+     * thread the first time, then the list is rewritten on the main thread.
+     * NOTE: if the list changes meanwhile the snapshot is stale, it is sorted again
+     */
     private void sort() {
-        Collections.sort(media, MediaComparators.getComparator(sortingMode, sortingOrder));
-        notifyDataSetChanged();
+        cancelSort();
+        if (sorter == null) sorter = new MediaSorter(media);
+        MediaSorter current = sorter;
+        SortingMode mode = sortingMode;
+        SortingOrder order = sortingOrder;
+        sorting = Observable.fromCallable(() -> current.getPermutation(mode, order))
+                .subscribeOn(Schedulers.computation())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(permutation -> {
+                    sorting = null;
+                    if (sorter != current) {
+                        sort();
+                        return;
+                    }
+                    HashSet<Long> selectedIds = getSelectedIds();
+                    current.apply(mode, order, media);
+                    positionsValid = false;
+                    sections = null;
+                    reselect(selectedIds);
+                    notifyDataSetChanged();
+                }, Throwable::printStackTrace);
+    }
+
+    private void cancelSort() {
+        if (sorting != null) sorting.dispose();
+        sorting = null;
+    }
+
+    private void onListChanged(@Nullable HashSet<Long> selectedIds) {
+        sorter = null;
+        positionsValid = false;
+        sections = null;
+        reselect(selectedIds);
+    }
+
+    /**
+     * The selection is made of positions, this is used to carry it over a change of the list.
+     *
+     * @return the ids of the selected media, null if there is none
+     */
+    @Nullable
+    private HashSet<Long> getSelectedIds() {
+        if (selection.isEmpty()) return null;
+        HashSet<Long> ids = new HashSet<>(selection.count() * 2);
+        for (int i = selection.nextSelected(0); i != -1; i = selection.nextSelected(i + 1))
+            ids.add(media.get(i).getId());
+        return ids;
+    }
+
+    private void reselect(@Nullable HashSet<Long> selectedIds) {
+        selection.clear();
+        if (selectedIds == null) return;
+        for (int i = 0; i < media.size(); i++)
+            if (selectedIds.contains(media.get(i).getId())) selection.set(i, true);
+    }
+
+    /**
+     * @return the position of the media in the list, -1 if it is not there
+     */
+    public int positionOf(Media m) {
+        if (!positionsValid) {
+            positions.clear();
+            for (int i = 0; i < media.size(); i++) positions.put(media.get(i).getId(), i);
+            positionsValid = true;
+        }
+        Integer position = positions.get(m.getId());
+        return position != null ? position : -1;
+    }
+
+    /**
+     * The label of the fast scroller while dragging: the month or the initial of the media.
+     */
+    @Override
+    public String getCustomStringForElement(int element) {
+        return getSections().getLabel(element);
+    }
+
+    /**
+     * @return the position of the first media of the section of the position, where a drag of the
+     * fast scroller snaps to; the position itself if there are no sections
+     */
+    public int getSectionStart(int position) {
+        SectionIndex sections = getSections();
+        int section = sections.getSectionForPosition(position);
+        return section != -1 ? sections.getPositionForSection(section) : position;
+    }
+
+    @NonNull
+    private SectionIndex getSections() {
+        if (sections == null) sections = SectionIndex.of(media, sortingMode);
+        return sections;
     }
 
     @Override
     public long getItemId(int position) {
-        return media.get(position).getUri().hashCode() ^ 1312;
+        return media.get(position).getId();
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        // NOTE: no diff to animate anymore, the media submitted are shown when attached again
+        differ.flush();
     }
 
     public void changeSortingOrder(SortingOrder sortingOrder) {
         this.sortingOrder = sortingOrder;
-        Collections.reverse(media);
-        notifyDataSetChanged();
+        // NOTE: not a reverse, the media with the same key keep their order
+        sort();
     }
 
     public void changeSortingMode(SortingMode sortingMode) {
@@ -102,28 +262,46 @@ public class MediaAdapter extends ThemedAdapter<MediaAdapter.ViewHolder> {
         sort();
     }
 
+    /**
+     * Sort the next media set by the mode, without sorting the current ones, e.g. loaded without its column.
+     */
+    public void setSortingMode(SortingMode sortingMode) {
+        cancelSort();
+        this.sortingMode = sortingMode;
+    }
+
+    /**
+     * @return true if the media have their size, e.g. loaded to be sorted by it
+     */
+    public boolean hasSizes() {
+        return media.isEmpty() || media.get(0).getSize() != -1;
+    }
+
     public ArrayList<Media> getSelected() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            return new ArrayList<>(media.stream().filter(Media::isSelected).collect(Collectors.toList()));
-        } else {
-            ArrayList<Media> arrayList = new ArrayList<>(selectedCount);
-            for (Media m : media)
-                if (m.isSelected())
-                    arrayList.add(m);
-            return arrayList;
-        }
+        ArrayList<Media> arrayList = new ArrayList<>(selection.count());
+        for (int i = selection.nextSelected(0); i != -1; i = selection.nextSelected(i + 1))
+            arrayList.add(media.get(i));
+        return arrayList;
+    }
+
+    /**
+     * @return the positions of the selected media, in ascending order
+     */
+    public int[] getSelectedPositions() {
+        return selection.toArray();
     }
 
     public Media getFirstSelected() {
-        if (selectedCount > 0) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
-                return media.stream().filter(Media::isSelected).findFirst().orElse(null);
-            else
-                for (Media m : media)
-                    if (m.isSelected())
-                        return m;
-        }
-        return null;
+        int first = selection.nextSelected(0);
+        return first != -1 ? media.get(first) : null;
+    }
+
+    public boolean isSelected(int position) {
+        return selection.isSelected(position);
+    }
+
+    public void deselect(int position) {
+        if (selection.set(position, false)) notifyItemChanged(position);
     }
 
     public ArrayList<Media> getMedia() {
@@ -131,29 +309,21 @@ public class MediaAdapter extends ThemedAdapter<MediaAdapter.ViewHolder> {
     }
 
     public int getSelectedCount() {
-        return selectedCount;
+        return selection.count();
     }
 
     public void selectAll() {
-        for (int i = 0; i < media.size(); i++)
-            if (media.get(i).setSelected(true))
-                notifyItemChanged(i);
-        selectedCount = media.size();
+        selection.setRange(0, media.size());
+        notifyItemRangeChanged(0, media.size());
         startSelection();
-
-
     }
 
     public boolean clearSelected() {
-        boolean changed = true;
-        for (int i = 0; i < media.size(); i++) {
-            boolean b = media.get(i).setSelected(false);
-            if (b)
-                notifyItemChanged(i);
-            changed &= b;
-        }
+        // true only if every media was selected, as it used to be
+        boolean changed = selection.count() == media.size();
+        selection.notifySelectedRanges(this);
+        selection.clear();
 
-        selectedCount = 0;
         stopSelection();
         return changed;
     }
@@ -163,8 +333,8 @@ public class MediaAdapter extends ThemedAdapter<MediaAdapter.ViewHolder> {
         return new ViewHolder(LayoutInflater.from(parent.getContext()).inflate(R.layout.card_photo, parent, false));
     }
 
-    private void notifySelected(boolean increase) {
-        selectedCount += increase ? 1 : -1;
+    private void notifySelectionChanged() {
+        int selectedCount = selection.count();
         actionsListener.onSelectionCountChanged(selectedCount, getItemCount());
 
         if (selectedCount == 0 && isSelecting) stopSelection();
@@ -228,7 +398,7 @@ public class MediaAdapter extends ThemedAdapter<MediaAdapter.ViewHolder> {
             holder.path.animate().alpha(0).setDuration(250);
         }
 
-        if (f.isSelected()) {
+        if (selection.isSelected(position)) {
             holder.icon.setIcon(CommunityMaterial.Icon.cmd_check);
             holder.icon.setVisibility(View.VISIBLE);
             holder.imageView.setColorFilter(0x88000000, PorterDuff.Mode.SRC_ATOP);
@@ -242,7 +412,8 @@ public class MediaAdapter extends ThemedAdapter<MediaAdapter.ViewHolder> {
 
         holder.layout.setOnClickListener(v -> {
             if (selecting()) {
-                notifySelected(f.toggleSelected());
+                selection.toggle(holder.getAdapterPosition());
+                notifySelectionChanged();
                 notifyItemChanged(holder.getAdapterPosition());
             } else
                 actionsListener.onItemSelected(holder.getAdapterPosition());
@@ -251,10 +422,11 @@ public class MediaAdapter extends ThemedAdapter<MediaAdapter.ViewHolder> {
         holder.layout.setOnLongClickListener(v -> {
             if (!selecting()) {
                 // If it is the first long press
-                notifySelected(f.toggleSelected());
+                selection.toggle(holder.getAdapterPosition());
+                notifySelectionChanged();
                 notifyItemChanged(holder.getAdapterPosition());
             } else {
-                selectAllUpTo(f);
+                selectAllUpTo(holder.getAdapterPosition());
             }
 
             return true;
@@ -262,28 +434,32 @@ public class MediaAdapter extends ThemedAdapter<MediaAdapter.ViewHolder> {
     }
 
     public void remove(Media media) {
-        int i = this.media.indexOf(media);
+        int i = positionOf(media);
+        if (i == -1) return;
+        HashSet<Long> selectedIds = getSelectedIds();
         this.media.remove(i);
+        onListChanged(selectedIds);
         notifyItemRemoved(i);
     }
 
+    /**
+     * NOTE: the removal is applied on the next frame, together with the others requested meanwhile
+     */
     public void removeSelectedMedia(Media media) {
-        int i = this.media.indexOf(media);
-        this.media.remove(i);
-        notifyItemRemoved(i);
+        pendingRemovals.add(media.getId());
+    }
 
-//        this.notifySelected(false);
+    private void removeAll(Set<Long> ids) {
+        HashSet<Long> selectedIds = getSelectedIds();
+        PendingRemovals.compact(this, media, m -> ids.contains(m.getId()));
+        onListChanged(selectedIds);
     }
 
     public void invalidateSelectedCount() {
-        int c = 0;
-        for (Media m : this.media) {
-            c += m.isSelected() ? 1 : 0;
-        }
+        pendingRemovals.flush();
+        int selectedCount = selection.count();
 
-        this.selectedCount = c;
-
-        if (this.selectedCount == 0) stopSelection();
+        if (selectedCount == 0) stopSelection();
         else {
             this.actionsListener.onSelectionCountChanged(selectedCount, media.size());
         }
@@ -297,62 +473,72 @@ public class MediaAdapter extends ThemedAdapter<MediaAdapter.ViewHolder> {
 
 
     /**
-     * On longpress, it finds the last or the first selected image before or after the targetIndex
-     * and selects them all.
-     *
-     * @param
+     * On longpress, it finds the last selected image before the targetIndex (or the first one
+     * after it, if there is none before) and selects everything in between.
      */
-    public void selectAllUpTo(Media m) {
-        int targetIndex = media.indexOf(m);
-
-        int indexRightBeforeOrAfter = -1;
-        int indexNow;
-
-        // TODO: 4/5/17 rewrite?
-        for (Media sm : getSelected()) {
-            indexNow = media.indexOf(sm);
-            if (indexRightBeforeOrAfter == -1) indexRightBeforeOrAfter = indexNow;
-
-            if (indexNow > targetIndex) break;
-            indexRightBeforeOrAfter = indexNow;
-        }
-
-        if (indexRightBeforeOrAfter != -1) {
-            for (int index = Math.min(targetIndex, indexRightBeforeOrAfter); index <= Math.max(targetIndex, indexRightBeforeOrAfter); index++) {
-                if (media.get(index) != null) {
-                    if (media.get(index).setSelected(true)) {
-                        notifySelected(true);
-                        notifyItemChanged(index);
-                    }
-                }
-            }
-
+    public void selectAllUpTo(int targetIndex) {
+        if (targetIndex < 0 || targetIndex >= media.size()) return;
+
+        int indexRightBeforeOrAfter = selection.previousSelected(targetIndex);
+        if (indexRightBeforeOrAfter == -1) indexRightBeforeOrAfter = selection.nextSelected(targetIndex);
+        if (indexRightBeforeOrAfter == -1) return;
+
+        int from = Math.min(targetIndex, indexRightBeforeOrAfter);
+        int to = Math.max(targetIndex, indexRightBeforeOrAfter) + 1;
+        if (selection.setRange(from, to) > 0) {
+            notifyItemRangeChanged(from, to - from);
+            notifySelectionChanged();
         }
     }
 
     public void setupFor(Album album) {
-        media.clear();
-        changeSortingMode(album.settings.getSortingMode());
-        changeSortingOrder(album.settings.getSortingOrder());
-        notifyDataSetChanged();
+        clear();
+        // NOTE: the list is empty, there is nothing to sort
+        this.sortingMode = album.settings.getSortingMode();
+        this.sortingOrder = album.settings.getSortingOrder();
     }
 
     public void clear() {
+        pendingRemovals.clear();
+        differ.cancel();
+        cancelSort();
+        int count = media.size();
         media.clear();
-        notifyDataSetChanged();
+        onListChanged(null);
+        notifyItemRangeRemoved(0, count);
     }
 
     public void setMedia(@NonNull List<Media> mediaList) {
-        media.clear();
-        media.addAll(mediaList);
-        notifyDataSetChanged();
+        setMedia(mediaList, null);
+    }
+
+    /**
+     * Replace the media, dispatching only what changed (by id) from the current ones.
+     *
+     * @param mediaList sorted with the current sorting
+     * @param onApplied run once the adapter shows the new media
+     */
+    @SuppressWarnings("unchecked")
+    public void setMedia(@NonNull List<Media> mediaList, @Nullable Runnable onApplied) {
+        pendingRemovals.flush();
+        HashSet<Long>[] selectedIds = new HashSet[1];
+        differ.submit(new ArrayList<>(mediaList),
+                () -> selectedIds[0] = getSelectedIds(),
+                () -> {
+                    onListChanged(selectedIds[0]);
+                    // NOTE: some of the selected media may be gone
+                    if (isSelecting) notifySelectionChanged();
+                    if (onApplied != null) onApplied.run();
+                });
     }
 
     public int add(Media album) {
         int i = Collections.binarySearch(
                 media, album, MediaComparators.getComparator(sortingMode, sortingOrder));
         if (i < 0) i = ~i;
+        HashSet<Long> selectedIds = getSelectedIds();
         media.add(i, album);
+        onListChanged(selectedIds);
 
         //notifyItemRangeInserted(0, media.size()-1);
         notifyItemInserted(i);
@@ -360,11 +546,50 @@ public class MediaAdapter extends ThemedAdapter<MediaAdapter.ViewHolder> {
         return i;
     }
 
+    /**
+     * Add a chunk of media already sorted with the current sorting, see {@link org.horaapps.leafpic.util.RxBatch}
+     */
+    public void addAll(@NonNull List<Media> chunk) {
+        HashSet<Long> selectedIds = getSelectedIds();
+        SortedMerge.merge(this, media, chunk, MediaComparators.getComparator(sortingMode, sortingOrder));
+        onListChanged(selectedIds);
+    }
+
     @Override
     public int getItemCount() {
         return media.size();
     }
 
+    private static final class MediaDiff extends DiffUtil.Callback {
+
+        private final List<Media> oldMedia, newMedia;
+
+        MediaDiff(List<Media> oldMedia, List<Media> newMedia) {
+            this.oldMedia = oldMedia;
+            this.newMedia = newMedia;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldMedia.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newMedia.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldMedia.get(oldItemPosition).getId() == newMedia.get(newItemPosition).getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldMedia.get(oldItemPosition).hasSameContent(newMedia.get(newItemPosition));
+        }
+    }
+
     static class ViewHolder extends ThemedViewHolder {
         @BindView(R.id.photo_preview)
         ImageView imageView;
@@ -0,0 +1,90 @@
+package org.horaapps.leafpic.adapters;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Coalesces the removals requested one by one (e.g. by the progress of a delete) and applies
+ * them to the adapter list in a single pass on the next loop of the main thread.
+ * <p>
+ * Removing a thousand items one at a time costs a thousand shifts of the list and a thousand
+ * lookups of a position that keeps moving; here it costs a pass over the list per frame.
+ */
+public final class PendingRemovals {
+
+    public interface Target {
+        /**
+         * Remove the items with the given ids, see {@link #compact(RecyclerView.Adapter, List, Filter)}.
+         */
+        void removeAll(@NonNull Set<Long> ids);
+    }
+
+    public interface Filter<T> {
+        boolean isRemoved(T item);
+    }
+
+    private final Target target;
+    private final HashSet<Long> ids = new HashSet<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+
+    public PendingRemovals(@NonNull Target target) {
+        this.target = target;
+    }
+
+    public void add(long id) {
+        if (ids.isEmpty()) handler.post(flushRunnable);
+        ids.add(id);
+    }
+
+    /**
+     * Apply now the removals still queued.
+     */
+    public void flush() {
+        handler.removeCallbacks(flushRunnable);
+        if (ids.isEmpty()) return;
+        target.removeAll(ids);
+        ids.clear();
+    }
+
+    public void clear() {
+        handler.removeCallbacks(flushRunnable);
+        ids.clear();
+    }
+
+    /**
+     * Drop the matching items keeping the order of the others,
+     * with a notifyItemRangeRemoved for each run of removed items.
+     *
+     * @return the number of removed items
+     */
+    public static <T> int compact(@NonNull RecyclerView.Adapter<?> adapter, @NonNull List<T> list, @NonNull Filter<T> filter) {
+        int size = list.size();
+        int write = 0;
+        int runStart = -1;
+
+        for (int read = 0; read < size; read++) {
+            T item = list.get(read);
+            if (filter.isRemoved(item)) {
+                if (runStart == -1) runStart = read;
+                continue;
+            }
+            if (runStart != -1) {
+                // the run starts at 'write' once the previous runs are gone
+                adapter.notifyItemRangeRemoved(write, read - runStart);
+                runStart = -1;
+            }
+            list.set(write++, item);
+        }
+        if (runStart != -1) adapter.notifyItemRangeRemoved(write, size - runStart);
+
+        list.subList(write, size).clear();
+        return size - write;
+    }
+}
@@ -0,0 +1,152 @@
+package org.horaapps.leafpic.adapters;
+
+import android.support.annotation.NonNull;
+import android.widget.SectionIndexer;
+
+import org.horaapps.leafpic.data.Media;
+import org.horaapps.leafpic.data.sort.SortingMode;
+import org.horaapps.leafpic.timeline.DateBuckets;
+import org.horaapps.leafpic.timeline.GroupingMode;
+import org.horaapps.leafpic.timeline.data.TimelineHeaderModel;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Sections of a sorted list of media: months for the dates, first letters for the names.
+ * <p>
+ * Only the start of each section is kept, sorted, so the section of a position is a binary
+ * search away; this is what the fast scroller asks for every step of a drag. When the drag ends
+ * the list snaps to the start of the section, see {@link #getPositionForSection(int)}.
+ */
+public final class SectionIndex implements SectionIndexer {
+
+    private static final SectionIndex EMPTY = new SectionIndex(new int[0], new String[0], 0);
+
+    private final int[] starts;
+    private final String[] labels;
+    private final int size;
+
+    /**
+     * @param starts the position of the first item of each section, ascending
+     * @param labels the label of each section
+     * @param size   the number of items
+     */
+    public SectionIndex(@NonNull int[] starts, @NonNull String[] labels, int size) {
+        this.starts = starts;
+        this.labels = labels;
+        this.size = size;
+    }
+
+    /**
+     * @param media sorted by sortingMode
+     * @return sections by month for DATE, by first letter for NAME and NUMERIC, none otherwise
+     */
+    @NonNull
+    public static SectionIndex of(@NonNull List<Media> media, @NonNull SortingMode sortingMode) {
+        switch (sortingMode) {
+            case DATE: return byMonth(media);
+            case NAME: case NUMERIC: return byInitial(media);
+            default: return EMPTY;
+        }
+    }
+
+    /**
+     * @param media sorted by date, in either order
+     */
+    @NonNull
+    public static SectionIndex byMonth(@NonNull List<Media> media) {
+        DateBuckets dateBuckets = new DateBuckets();
+        int[] starts = new int[16];
+        int count = 0, lastDay = 0, lastMonth = 0;
+        for (int i = 0; i < media.size(); i++) {
+            int day = dateBuckets.epochDay(media.get(i).getDateModified());
+            if (i > 0 && day == lastDay) continue;
+            int month = dateBuckets.bucketOf(GroupingMode.MONTH, day);
+            if (i == 0 || month != lastMonth) {
+                if (count == starts.length) starts = Arrays.copyOf(starts, count * 2);
+                starts[count++] = i;
+            }
+            lastDay = day;
+            lastMonth = month;
+        }
+        return byMonth(media, Arrays.copyOf(starts, count));
+    }
+
+    /**
+     * @param starts the index of the first media of each month, e.g. from {@link org.horaapps.leafpic.timeline.TimelineIndex}
+     */
+    @NonNull
+    public static SectionIndex byMonth(@NonNull List<Media> media, @NonNull int[] starts) {
+        String[] labels = new String[starts.length];
+        for (int s = 0; s < starts.length; s++) {
+            TimelineHeaderModel month = new TimelineHeaderModel(media.get(starts[s]).getDateModified());
+            labels[s] = GroupingMode.MONTH.getGroupHeader(month.getDate());
+        }
+        return new SectionIndex(starts, labels, media.size());
+    }
+
+    /**
+     * @param media sorted by name, in either order
+     */
+    @NonNull
+    public static SectionIndex byInitial(@NonNull List<Media> media) {
+        int[] starts = new int[16];
+        String[] labels = new String[16];
+        int count = 0;
+        for (int i = 0; i < media.size(); i++) {
+            String name = media.get(i).getName();
+            String initial = name.isEmpty() ? "" : name.substring(0, 1).toUpperCase(Locale.getDefault());
+            if (count > 0 && initial.equals(labels[count - 1])) continue;
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                labels = Arrays.copyOf(labels, count * 2);
+            }
+            starts[count] = i;
+            labels[count++] = initial;
+        }
+        return new SectionIndex(Arrays.copyOf(starts, count), Arrays.copyOf(labels, count), media.size());
+    }
+
+    /**
+     * @return the label of the section of the position, empty if there are no sections
+     */
+    @NonNull
+    public String getLabel(int position) {
+        int section = getSectionForPosition(position);
+        return section != -1 ? labels[section] : "";
+    }
+
+    /**
+     * @return the number of items in the section
+     */
+    public int getCount(int section) {
+        return (section + 1 < starts.length ? starts[section + 1] : size) - starts[section];
+    }
+
+    @Override
+    public Object[] getSections() {
+        return labels;
+    }
+
+    @Override
+    public int getPositionForSection(int sectionIndex) {
+        if (starts.length == 0) return 0;
+        return starts[Math.max(0, Math.min(sectionIndex, starts.length - 1))];
+    }
+
+    /**
+     * @return the last section starting at or before the position, -1 if there are no sections
+     */
+    @Override
+    public int getSectionForPosition(int position) {
+        int low = 0, high = starts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= position) low = mid + 1;
+            else high = mid;
+        }
+        return starts.length == 0 ? -1 : Math.max(0, low - 1);
+    }
+}
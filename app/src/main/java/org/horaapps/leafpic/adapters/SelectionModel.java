@@ -0,0 +1,196 @@
+package org.horaapps.leafpic.adapters;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.Arrays;
+
+/**
+ * Selected positions of an adapter, kept in a long[] bitset.
+ * <p>
+ * Toggling is O(1), selecting or clearing a range works a whole word (64 positions)
+ * at a time and the count is kept up to date with popcounts, so select all and range
+ * selections cost next to nothing even on very big lists.
+ * <p>
+ * Positions are not ids: the owner of the model has to move the selection when the list changes.
+ */
+public final class SelectionModel {
+
+    private static final int ADDRESS_BITS = 6;
+    private static final long WORD_MASK = 0xffffffffffffffffL;
+
+    private long[] words = new long[0];
+    private int count = 0;
+
+    private static int wordIndex(int position) {
+        return position >> ADDRESS_BITS;
+    }
+
+    private void ensureCapacity(int wordIndex) {
+        if (wordIndex < words.length) return;
+        words = Arrays.copyOf(words, Math.max(2 * words.length, wordIndex + 1));
+    }
+
+    public boolean isSelected(int position) {
+        int w = wordIndex(position);
+        return w < words.length && (words[w] & (1L << position)) != 0;
+    }
+
+    /**
+     * @return the new state of the position
+     */
+    public boolean toggle(int position) {
+        int w = wordIndex(position);
+        ensureCapacity(w);
+        words[w] ^= 1L << position;
+        boolean selected = (words[w] & (1L << position)) != 0;
+        count += selected ? 1 : -1;
+        return selected;
+    }
+
+    /**
+     * @return true if the state of the position changed
+     */
+    public boolean set(int position, boolean selected) {
+        if (isSelected(position) == selected) return false;
+        toggle(position);
+        return true;
+    }
+
+    /**
+     * Select the positions in [from, to).
+     *
+     * @return how many of them were not selected yet
+     */
+    public int setRange(int from, int to) {
+        if (from >= to) return 0;
+        int before = count;
+        int first = wordIndex(from), last = wordIndex(to - 1);
+        ensureCapacity(last);
+
+        long firstMask = WORD_MASK << from;
+        long lastMask = WORD_MASK >>> -to;
+        if (first == last) {
+            update(first, words[first] | (firstMask & lastMask));
+        } else {
+            update(first, words[first] | firstMask);
+            for (int w = first + 1; w < last; w++) update(w, WORD_MASK);
+            update(last, words[last] | lastMask);
+        }
+        return count - before;
+    }
+
+    /**
+     * Deselect the positions in [from, to).
+     *
+     * @return how many of them were selected
+     */
+    public int clearRange(int from, int to) {
+        if (from >= to || words.length == 0) return 0;
+        int before = count;
+        to = Math.min(to, words.length << ADDRESS_BITS);
+        if (from >= to) return 0;
+        int first = wordIndex(from), last = wordIndex(to - 1);
+
+        long firstMask = WORD_MASK << from;
+        long lastMask = WORD_MASK >>> -to;
+        if (first == last) {
+            update(first, words[first] & ~(firstMask & lastMask));
+        } else {
+            update(first, words[first] & ~firstMask);
+            for (int w = first + 1; w < last; w++) update(w, 0);
+            update(last, words[last] & ~lastMask);
+        }
+        return before - count;
+    }
+
+    private void update(int w, long value) {
+        count += Long.bitCount(value) - Long.bitCount(words[w]);
+        words[w] = value;
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0);
+        count = 0;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @return the first selected position at or after from, -1 if there is none
+     */
+    public int nextSelected(int from) {
+        if (from < 0) from = 0;
+        int w = wordIndex(from);
+        if (w >= words.length) return -1;
+
+        long word = words[w] & (WORD_MASK << from);
+        while (true) {
+            if (word != 0) return (w << ADDRESS_BITS) + Long.numberOfTrailingZeros(word);
+            if (++w == words.length) return -1;
+            word = words[w];
+        }
+    }
+
+    /**
+     * @return the first position at or after from that is not selected
+     */
+    public int nextUnselected(int from) {
+        int w = wordIndex(from);
+        if (w >= words.length) return from;
+
+        long word = ~words[w] & (WORD_MASK << from);
+        while (true) {
+            if (word != 0) return (w << ADDRESS_BITS) + Long.numberOfTrailingZeros(word);
+            if (++w == words.length) return words.length << ADDRESS_BITS;
+            word = ~words[w];
+        }
+    }
+
+    /**
+     * @return the last selected position at or before from, -1 if there is none
+     */
+    public int previousSelected(int from) {
+        if (from < 0) return -1;
+        int w = wordIndex(from);
+        if (w >= words.length) {
+            w = words.length - 1;
+            from = (words.length << ADDRESS_BITS) - 1;
+        }
+        if (w < 0) return -1;
+
+        long word = words[w] & (WORD_MASK >>> -(from + 1));
+        while (true) {
+            if (word != 0) return ((w + 1) << ADDRESS_BITS) - 1 - Long.numberOfLeadingZeros(word);
+            if (w-- == 0) return -1;
+            word = words[w];
+        }
+    }
+
+    /**
+     * @return the selected positions in ascending order
+     */
+    @NonNull
+    public int[] toArray() {
+        int[] positions = new int[count];
+        for (int i = 0, p = nextSelected(0); p != -1; p = nextSelected(p + 1)) positions[i++] = p;
+        return positions;
+    }
+
+    /**
+     * Notify the adapter once for each run of consecutive selected positions.
+     */
+    public void notifySelectedRanges(@NonNull RecyclerView.Adapter<?> adapter) {
+        for (int start = nextSelected(0); start != -1; ) {
+            int end = nextUnselected(start);
+            adapter.notifyItemRangeChanged(start, end - start);
+            start = nextSelected(end);
+        }
+    }
+}
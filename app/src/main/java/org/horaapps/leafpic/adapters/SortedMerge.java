@@ -0,0 +1,77 @@
+package org.horaapps.leafpic.adapters;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Merge a sorted chunk into the sorted list backing an adapter, with range notifications.
+ */
+final class SortedMerge {
+
+    /**
+     * Past this many separate runs a full refresh is cheaper than animating each of them.
+     */
+    private static final int MAX_RUNS = 32;
+
+    private SortedMerge() {
+    }
+
+    /**
+     * @param items the adapter list, sorted with comparator
+     * @param chunk the new items, sorted with comparator
+     */
+    static <T> void merge(@NonNull RecyclerView.Adapter<?> adapter, @NonNull List<T> items,
+                          @NonNull List<T> chunk, @NonNull Comparator<? super T> comparator) {
+        if (chunk.isEmpty()) return;
+
+        int size = items.size();
+        if (size == 0 || comparator.compare(items.get(size - 1), chunk.get(0)) <= 0) {
+            // NOTE: the common case, the provider already returns rows in the same order
+            items.addAll(chunk);
+            adapter.notifyItemRangeInserted(size, chunk.size());
+            return;
+        }
+
+        ArrayList<T> merged = new ArrayList<>(size + chunk.size());
+        // start and length of each run of new items, in final positions
+        int[] runs = new int[2 * MAX_RUNS];
+        int runCount = 0;
+        boolean overflow = false;
+        boolean lastFromChunk = false;
+
+        int i = 0, j = 0;
+        while (i < size || j < chunk.size()) {
+            if (j == chunk.size() || (i < size && comparator.compare(items.get(i), chunk.get(j)) <= 0)) {
+                merged.add(items.get(i++));
+                lastFromChunk = false;
+                continue;
+            }
+
+            if (!overflow) {
+                if (lastFromChunk) runs[2 * runCount - 1]++;
+                else if (runCount < MAX_RUNS) {
+                    runs[2 * runCount] = merged.size();
+                    runs[2 * runCount + 1] = 1;
+                    runCount++;
+                } else overflow = true;
+            }
+            merged.add(chunk.get(j++));
+            lastFromChunk = true;
+        }
+
+        items.clear();
+        items.addAll(merged);
+
+        if (overflow) {
+            adapter.notifyDataSetChanged();
+            return;
+        }
+        // ascending order, so every run is notified at its final position
+        for (int r = 0; r < runCount; r++)
+            adapter.notifyItemRangeInserted(runs[2 * r], runs[2 * r + 1]);
+    }
+}
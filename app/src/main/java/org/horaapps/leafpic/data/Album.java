@@ -4,9 +4,10 @@ import android.content.Context;
 import android.database.Cursor;
 import android.os.Parcel;
 import android.os.Parcelable;
-import android.provider.MediaStore;
+import android.support.annotation.Nullable;
 
 import org.horaapps.leafpic.data.filter.FilterMode;
+import org.horaapps.leafpic.data.provider.Query;
 import org.horaapps.leafpic.data.sort.SortingMode;
 import org.horaapps.leafpic.data.sort.SortingOrder;
 import org.horaapps.leafpic.util.StringUtils;
@@ -27,6 +28,7 @@ public class Album implements CursorHandler, Parcelable {
 	private boolean selected = false;
 	public AlbumSettings settings = null;
 	private Media lastMedia = null;
+	private AlbumStats stats = null;
 
 	public Album(String path, String name) {
 		this.name = name;
@@ -55,17 +57,18 @@ public class Album implements CursorHandler, Parcelable {
 				cur.getLong(0),
 				cur.getInt(2),
 				cur.getLong(4));
-		setLastMedia(new Media(cur.getString(3)));
+
+		String cover = cur.getString(5);
+		if (cover != null && cover.length() > Query.Profile.COVER_PATH_OFFSET)
+			setLastMedia(Media.fromMediaStore(
+					Long.parseLong(cover.substring(Query.Profile.COVER_ID_OFFSET, Query.Profile.COVER_PATH_OFFSET)),
+					cover.substring(Query.Profile.COVER_PATH_OFFSET)));
+		else setLastMedia(new Media(cur.getString(3)));
+		stats = new AlbumStats(cur, 6);
 	}
 
 	public static String[] getProjection() {
-		return new String[]{
-				MediaStore.Files.FileColumns.PARENT,
-				MediaStore.Images.Media.BUCKET_DISPLAY_NAME,
-				"count(*)",
-				MediaStore.Images.Media.DATA,
-				"max(" + MediaStore.Images.Media.DATE_MODIFIED + ")"
-		};
+		return Query.Profile.ALBUM.getProjection();
 	}
 
 	@Override
@@ -128,6 +131,21 @@ public class Album implements CursorHandler, Parcelable {
 		return new Media();
 	}
 
+	/**
+	 * @return the aggregates of the album, null if it does not come from the MediaStore
+	 */
+	@Nullable
+	public AlbumStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * @return the size of the media in bytes if known, otherwise their count
+	 */
+	public long getSizeKey() {
+		return stats != null ? stats.getTotalSize() : count;
+	}
+
 	public void setLastMedia(Media lastMedia) {
 		this.lastMedia = lastMedia;
 	}
@@ -347,6 +365,7 @@ public class Album implements CursorHandler, Parcelable {
 		dest.writeByte(this.selected ? (byte) 1 : (byte) 0);
 		dest.writeSerializable(this.settings);
 		dest.writeParcelable(this.lastMedia, flags);
+		dest.writeParcelable(this.stats, flags);
 	}
 
 	protected Album(Parcel in) {
@@ -358,6 +377,7 @@ public class Album implements CursorHandler, Parcelable {
 		this.selected = in.readByte() != 0;
 		this.settings = (AlbumSettings) in.readSerializable();
 		this.lastMedia = in.readParcelable(Media.class.getClassLoader());
+		this.stats = in.readParcelable(AlbumStats.class.getClassLoader());
 	}
 
 	public static final Parcelable.Creator<Album> CREATOR = new Parcelable.Creator<Album>() {
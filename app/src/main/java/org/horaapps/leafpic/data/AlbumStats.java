@@ -0,0 +1,103 @@
+package org.horaapps.leafpic.data;
+
+import android.database.Cursor;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Aggregates of the media of an album, computed by the album query itself
+ * (see {@link org.horaapps.leafpic.data.provider.Query.Profile#ALBUM}) along with the count.
+ */
+public class AlbumStats implements Parcelable {
+
+    private final long totalSize;
+    private final long oldestDateTaken, newestDateTaken;
+    private final int images, videos, gifs;
+
+    public AlbumStats(long totalSize, long oldestDateTaken, long newestDateTaken, int images, int videos, int gifs) {
+        this.totalSize = totalSize;
+        this.oldestDateTaken = oldestDateTaken;
+        this.newestDateTaken = newestDateTaken;
+        this.images = images;
+        this.videos = videos;
+        this.gifs = gifs;
+    }
+
+    /**
+     * @param first the column of the total size, the others follow in the order of the constructor
+     */
+    AlbumStats(Cursor cur, int first) {
+        this(cur.getLong(first),
+                cur.getLong(first + 1),
+                cur.getLong(first + 2),
+                cur.getInt(first + 3),
+                cur.getInt(first + 4),
+                cur.getInt(first + 5));
+    }
+
+    /**
+     * @return the sum of the sizes of the media, in bytes
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public long getOldestDateTaken() {
+        return oldestDateTaken;
+    }
+
+    public long getNewestDateTaken() {
+        return newestDateTaken;
+    }
+
+    /**
+     * NOTE: gifs are counted among the images as well
+     */
+    public int getImages() {
+        return images;
+    }
+
+    public int getVideos() {
+        return videos;
+    }
+
+    public int getGifs() {
+        return gifs;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeLong(this.totalSize);
+        dest.writeLong(this.oldestDateTaken);
+        dest.writeLong(this.newestDateTaken);
+        dest.writeInt(this.images);
+        dest.writeInt(this.videos);
+        dest.writeInt(this.gifs);
+    }
+
+    protected AlbumStats(Parcel in) {
+        this.totalSize = in.readLong();
+        this.oldestDateTaken = in.readLong();
+        this.newestDateTaken = in.readLong();
+        this.images = in.readInt();
+        this.videos = in.readInt();
+        this.gifs = in.readInt();
+    }
+
+    public static final Parcelable.Creator<AlbumStats> CREATOR = new Parcelable.Creator<AlbumStats>() {
+        @Override
+        public AlbumStats createFromParcel(Parcel source) {
+            return new AlbumStats(source);
+        }
+
+        @Override
+        public AlbumStats[] newArray(int size) {
+            return new AlbumStats[size];
+        }
+    };
+}
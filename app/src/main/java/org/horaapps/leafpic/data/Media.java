@@ -8,11 +8,14 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import android.provider.MediaStore;
 import android.support.media.ExifInterface;
+import android.text.TextUtils;
 
 import com.bumptech.glide.signature.ObjectKey;
 import com.drew.lang.GeoLocation;
 import com.drew.lang.annotations.NotNull;
 
+import org.horaapps.leafpic.data.provider.ExifIndex;
+import org.horaapps.leafpic.data.provider.Query;
 import org.horaapps.leafpic.timeline.data.TimelineItem;
 import org.horaapps.leafpic.util.ArrayUtils;
 import org.horaapps.leafpic.util.MimeTypeUtils;
@@ -27,19 +30,38 @@ import java.io.IOException;
  *  Try to separate out Database logic and projections from this class */
 public class Media implements TimelineItem, CursorHandler, Parcelable {
 
-    private static final String[] sProjection = new String[] {
-            MediaStore.Images.Media.DATA,
-            MediaStore.Images.Media.DATE_TAKEN,
-            MediaStore.Images.Media.MIME_TYPE,
-            MediaStore.Images.Media.SIZE,
-            MediaStore.Images.Media.ORIENTATION
-    };
+    private static final String[] sProjection = Query.Profile.GRID.getProjection();
+
+    private static final Reader GRID_READER = new Reader(Query.Profile.GRID);
+    private static final Reader GRID_BY_SIZE_READER = new Reader(Query.Profile.GRID_BY_SIZE);
+
+    /**
+     * Reads the media from the cursors of a profile, with the positions of its columns.
+     * NOTE: the columns missing from the profile keep the default of the media, e.g. no size
+     */
+    private static final class Reader implements CursorHandler<Media> {
+        final int id, data, dateTaken, mimeType, orientation, size;
+
+        Reader(Query.Profile profile) {
+            String[] projection = profile.getProjection();
+            id = ArrayUtils.getIndex(projection, MediaStore.Images.Media._ID);
+            data = ArrayUtils.getIndex(projection, MediaStore.Images.Media.DATA);
+            dateTaken = ArrayUtils.getIndex(projection, MediaStore.Images.Media.DATE_TAKEN);
+            mimeType = ArrayUtils.getIndex(projection, MediaStore.Images.Media.MIME_TYPE);
+            orientation = ArrayUtils.getIndex(projection, MediaStore.Images.Media.ORIENTATION);
+            size = ArrayUtils.getIndex(projection, MediaStore.Images.Media.SIZE);
+        }
 
-    private static final int CURSOR_POS_DATA = ArrayUtils.getIndex(sProjection, MediaStore.Images.Media.DATA);
-    private static final int CURSOR_POS_DATE_TAKEN = ArrayUtils.getIndex(sProjection, MediaStore.Images.Media.DATE_TAKEN);
-    private static final int CURSOR_POS_MIME_TYPE = ArrayUtils.getIndex(sProjection, MediaStore.Images.Media.MIME_TYPE);
-    private static final int CURSOR_POS_SIZE = ArrayUtils.getIndex(sProjection, MediaStore.Images.Media.SIZE);
-    private static final int CURSOR_POS_ORIENTATION = ArrayUtils.getIndex(sProjection, MediaStore.Images.Media.ORIENTATION);
+        @Override
+        public Media handle(Cursor cur) {
+            return new Media(cur, this);
+        }
+    }
+
+    /**
+     * MediaStore ids are positive, ids made up for media not coming from it are negative.
+     */
+    private long id;
 
     private String path = null;
     private long dateModified = -1;
@@ -49,15 +71,21 @@ public class Media implements TimelineItem, CursorHandler, Parcelable {
     private String uriString = null;
 
     private long size = -1;
-    private boolean selected = false;
 
     public Media() {
+        this.id = syntheticId(null);
     }
 
     public Media(String path, long dateModified) {
         this.path = path;
         this.dateModified = dateModified;
         this.mimeType = MimeTypeUtils.getMimeType(path);
+        this.id = syntheticId(path);
+    }
+
+    public Media(String path, long dateModified, long size) {
+        this(path, dateModified);
+        this.size = size;
     }
 
     public Media(File file) {
@@ -74,25 +102,95 @@ public class Media implements TimelineItem, CursorHandler, Parcelable {
         this.uriString = mediaUri.toString();
         this.path = null;
         this.mimeType = MimeTypeUtils.getMimeType(uriString);
+        this.id = syntheticId(uriString);
+    }
+
+    /**
+     * A copy of the media, e.g. to hand out the ones of a cache
+     */
+    public Media(@NotNull Media other) {
+        this.id = other.id;
+        this.path = other.path;
+        this.dateModified = other.dateModified;
+        this.mimeType = other.mimeType;
+        this.orientation = other.orientation;
+        this.uriString = other.uriString;
+        this.size = other.size;
+    }
+
+    private Media(@NotNull Cursor cur, @NotNull Reader columns) {
+        this.id = cur.getLong(columns.id);
+        this.path = cur.getString(columns.data);
+        this.dateModified = cur.getLong(columns.dateTaken);
+        this.mimeType = cur.getString(columns.mimeType);
+        this.orientation = cur.getInt(columns.orientation);
+        if (columns.size != -1) this.size = cur.getLong(columns.size);
+    }
+
+    /**
+     * @param profile one of the media profiles of {@link Query.Profile}
+     * @return the handler reading the media from the cursors of the profile
+     */
+    public static CursorHandler<Media> reader(@NotNull Query.Profile profile) {
+        switch (profile) {
+            case GRID: return GRID_READER;
+            case GRID_BY_SIZE: return GRID_BY_SIZE_READER;
+            default: throw new IllegalArgumentException("Not a media profile: " + profile);
+        }
     }
 
-    public Media(@NotNull Cursor cur) {
-        this.path = cur.getString(CURSOR_POS_DATA);
-        this.dateModified = cur.getLong(CURSOR_POS_DATE_TAKEN);
-        this.mimeType = cur.getString(CURSOR_POS_MIME_TYPE);
-        this.size = cur.getLong(CURSOR_POS_SIZE);
-        this.orientation = cur.getInt(CURSOR_POS_ORIENTATION);
+    /**
+     * A media of the MediaStore known by path and _ID, e.g. the cover of an album, see {@link Query.Profile#ALBUM}.
+     * NOTE: not a constructor, Media(String, long) is the date one
+     */
+    public static Media fromMediaStore(long id, String path) {
+        Media media = new Media(path);
+        media.id = id;
+        return media;
     }
 
     @Override
     public Media handle(Cursor cu) {
-        return new Media(cu);
+        return GRID_READER.handle(cu);
     }
 
     public static String[] getProjection() {
         return sProjection;
     }
 
+    /**
+     * Stable identity of the media: the MediaStore _ID if it comes from there, otherwise a
+     * negative hash of the path (or uri) it was created with.
+     * NOTE: set by every constructor, it does not change when the file is renamed or moved
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * 64 bit FNV-1a, with the sign bit set so it never clashes with a MediaStore id.
+     */
+    private static long syntheticId(String key) {
+        long hash = 0xcbf29ce484222325L;
+        if (key != null)
+            for (int i = 0; i < key.length(); i++) {
+                hash ^= key.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+        return hash | Long.MIN_VALUE;
+    }
+
+    /**
+     * @return true if the two media would be displayed in the same way
+     */
+    public boolean hasSameContent(@NotNull Media other) {
+        return dateModified == other.dateModified
+                && size == other.size
+                && orientation == other.orientation
+                && TextUtils.equals(path, other.path)
+                && TextUtils.equals(mimeType, other.mimeType);
+    }
+
     public void setUri(String uriString) {
         this.uriString = uriString;
     }
@@ -105,23 +203,6 @@ public class Media implements TimelineItem, CursorHandler, Parcelable {
         return mimeType;
     }
 
-    // TODO Calvin: Do not store adapter selection in a Media data class.
-    // This does not belong here.
-    public boolean isSelected() {
-        return selected;
-    }
-
-    public boolean setSelected(boolean selected) {
-        if (this.selected == selected) return false;
-        this.selected = selected;
-        return true;
-    }
-
-    public boolean toggleSelected() {
-        selected = !selected;
-        return selected;
-    }
-
     public boolean isGif() {
         return mimeType.endsWith("gif");
     }
@@ -216,36 +297,38 @@ public class Media implements TimelineItem, CursorHandler, Parcelable {
         return true;
     }
 
+    /**
+     * Two media are the same if they have the same id: a media created from a path is not the one
+     * of the MediaStore for the same file, they have to be matched by path.
+     */
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof Media)
-            return getPath().equals(((Media) obj).getPath());
+            return getId() == ((Media) obj).getId();
 
         return super.equals(obj);
     }
 
-    @Deprecated
-    private long getDateTaken() {
-        /*// TODO: 16/08/16 improved
-        Date dateOriginal = metadata.getDateOriginal();
-        if (dateOriginal != null) return metadata.getDateOriginal().getTime();
-        return -1;*/
-        return 1;
+    @Override
+    public int hashCode() {
+        long id = getId();
+        return (int) (id ^ (id >>> 32));
     }
 
-    @Deprecated
-    public boolean fixDate() {
-        long newDate = getDateTaken();
-        if (newDate != -1) {
-            File f = new File(path);
-            if (f.setLastModified(newDate)) {
-                dateModified = newDate;
-                return true;
-            }
-        }
-        return false;
+    /**
+     * @return a copy of the media with the date it was taken on, e.g. from the {@link ExifIndex}
+     * or after {@link MediaHelper#repairDates}
+     * NOTE: a copy, the media loaded are shared by the adapters and the cache of the albums,
+     * which read them on the main thread
+     */
+    @NotNull
+    public Media withDateTaken(long dateTaken) {
+        Media media = new Media(this);
+        media.dateModified = dateTaken;
+        return media;
     }
 
+
     //</editor-fold>
 
     public File getFile() {
@@ -269,7 +352,7 @@ public class Media implements TimelineItem, CursorHandler, Parcelable {
         dest.writeInt(this.orientation);
         dest.writeString(this.uriString);
         dest.writeLong(this.size);
-        dest.writeByte(this.selected ? (byte) 1 : (byte) 0);
+        dest.writeLong(this.id);
     }
 
     protected Media(Parcel in) {
@@ -279,7 +362,7 @@ public class Media implements TimelineItem, CursorHandler, Parcelable {
         this.orientation = in.readInt();
         this.uriString = in.readString();
         this.size = in.readLong();
-        this.selected = in.readByte() != 0;
+        this.id = in.readLong();
     }
 
     public static final Parcelable.Creator<Media> CREATOR = new Parcelable.Creator<Media>() {
@@ -1,16 +1,26 @@
 package org.horaapps.leafpic.data;
 
+import android.content.ContentProviderOperation;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.media.MediaScannerConnection;
 import android.net.Uri;
+import android.os.RemoteException;
 import android.provider.MediaStore;
 
+import org.horaapps.leafpic.R;
+import org.horaapps.leafpic.data.metadata.ExifHeader;
 import org.horaapps.leafpic.data.provider.CPHelper;
+import org.horaapps.leafpic.data.provider.DayOfYearIndex;
+import org.horaapps.leafpic.data.provider.MediaRepository;
+import org.horaapps.leafpic.progress.ErrorCause;
 import org.horaapps.leafpic.progress.ProgressException;
 import org.horaapps.leafpic.util.StringUtils;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 import io.reactivex.Observable;
 import io.reactivex.android.schedulers.AndroidSchedulers;
@@ -24,6 +34,11 @@ public class MediaHelper {
 
     private static Uri external = MediaStore.Files.getContentUri("external");
 
+    /**
+     * Media repaired between two writes to the MediaStore, see {@link #repairDates(Context, List)}.
+     */
+    private static final int REPAIR_BATCH_SIZE = 500;
+
     public static Observable<Media> deleteMedia(Context context, Media media) {
         return Observable.create(subscriber -> {
             try {
@@ -65,10 +80,86 @@ public class MediaHelper {
     public static boolean internalDeleteMedia(Context context, Media media) throws ProgressException {
         File file = new File(media.getPath());
         StorageHelper.deleteFile(context, file);
+        MediaRepository.invalidateFolder(file.getParent());
         context.getContentResolver().delete(external, MediaStore.MediaColumns.DATA + "=?", new String[]{file.getPath()});
         return true;
     }
 
+    /**
+     * Set the date of the media to the date-original of their EXIF: the last modified time of
+     * the files, DATE_TAKEN and DATE_MODIFIED of the MediaStore.
+     * <p>
+     * Each file is read once, only its EXIF header, and the MediaStore is updated with a single
+     * applyBatch for every {@link #REPAIR_BATCH_SIZE} media, instead of a scan for each file.
+     *
+     * @return a source for each batch, emitting a copy of each media repaired with its new date;
+     * the media without a date-original end it with a {@link ProgressException} listing them
+     */
+    public static List<Observable<Media>> repairDates(Context context, List<Media> media) {
+        ArrayList<Observable<Media>> sources = new ArrayList<>(media.size() / REPAIR_BATCH_SIZE + 1);
+        for (int from = 0; from < media.size(); from += REPAIR_BATCH_SIZE) {
+            List<Media> batch = new ArrayList<>(media.subList(from, Math.min(from + REPAIR_BATCH_SIZE, media.size())));
+            sources.add(Observable.create(subscriber -> {
+                ErrorCause errors = new ErrorCause(context.getString(R.string.unable_to_fix_date));
+                ArrayList<Media> repaired = new ArrayList<>(batch.size());
+                ArrayList<ContentProviderOperation> operations = new ArrayList<>(batch.size());
+
+                for (Media m : batch) {
+                    long date = readDateOriginal(m);
+                    if (date == -1) {
+                        errors.addCause(m.getName());
+                        continue;
+                    }
+                    File file = new File(m.getPath());
+                    // NOTE: some file systems keep seconds only, the millis may differ anyway
+                    boolean mtimeSet = file.lastModified() / 1000 == date / 1000 || file.setLastModified(date);
+                    // NOTE: the date taken is fixed anyway, only the date of the file is not
+                    if (!mtimeSet) errors.addCause(context.getString(R.string.file_date_not_changed, m.getName()));
+
+                    // NOTE: a copy, the media are shared with the main thread
+                    repaired.add(m.withDateTaken(date));
+                    if (m.getId() > 0) {
+                        ContentProviderOperation.Builder operation = ContentProviderOperation.newUpdate(external)
+                                .withSelection(MediaStore.Files.FileColumns._ID + "=?", new String[]{String.valueOf(m.getId())})
+                                .withValue(MediaStore.Images.ImageColumns.DATE_TAKEN, date);
+                        if (mtimeSet) operation.withValue(MediaStore.Files.FileColumns.DATE_MODIFIED, date / 1000);
+                        operations.add(operation.build());
+                    }
+                }
+
+                try {
+                    if (!operations.isEmpty())
+                        context.getContentResolver().applyBatch(MediaStore.AUTHORITY, operations);
+                } catch (RemoteException | OperationApplicationException e) {
+                    subscriber.onError(e);
+                    return;
+                }
+                MediaRepository.invalidateAll();
+                // NOTE: the DATE_MODIFIED can go back, the index would not read them again
+                long[] ids = new long[repaired.size()];
+                for (int i = 0; i < ids.length; i++) ids[i] = repaired.get(i).getId();
+                DayOfYearIndex.getInstance(context).update(ids);
+
+                for (Media m : repaired) subscriber.onNext(m);
+                if (errors.hasErrors()) subscriber.onError(new ProgressException(errors));
+                else subscriber.onComplete();
+            }));
+        }
+        return sources;
+    }
+
+    /**
+     * @return the date-original of the EXIF of the media, -1 if missing
+     */
+    private static long readDateOriginal(Media media) {
+        try {
+            ExifHeader exif = media.getPath() != null ? ExifHeader.read(new File(media.getPath())) : null;
+            return exif != null ? exif.dateOriginal : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
     public static boolean renameMedia(Context context, Media media, String newName) {
         // return if filename didn't change
         String oldFilename = media.getName();
@@ -80,6 +171,7 @@ public class MediaHelper {
             File from = new File(media.getPath());
             File to = new File(StringUtils.getPhotoPathRenamed(media.getPath(), newName));
             if (success = StorageHelper.moveFile(context, from, to)) {
+                MediaRepository.invalidateFolder(from.getParent());
                 context.getContentResolver().delete(external,
                         MediaStore.MediaColumns.DATA + "=?", new String[]{from.getPath()});
 
@@ -98,6 +190,8 @@ public class MediaHelper {
             File from = new File(media.getPath());
             File to = new File(targetDir, from.getName());
             if (success = StorageHelper.moveFile(context, from, to)) {
+                MediaRepository.invalidateFolder(from.getParent());
+                MediaRepository.invalidateFolder(to.getParent());
 
                 context.getContentResolver().delete(external,
                         MediaStore.MediaColumns.DATA + "=?", new String[]{from.getPath()});
@@ -116,9 +210,10 @@ public class MediaHelper {
         try {
             File from = new File(media.getPath());
             File to = new File(targetDir);
-            if (success = StorageHelper.copyFile(context, from, to))
+            if (success = StorageHelper.copyFile(context, from, to)) {
+                MediaRepository.invalidateFolder(to.getPath());
                 scanFile(context, new String[]{StringUtils.getPhotoPathMoved(media.getPath(), targetDir)});
-
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -0,0 +1,62 @@
+package org.horaapps.leafpic.data;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Hands lists of media from a screen to another one in the same process.
+ * <p>
+ * The grid publishes the list it has already loaded and passes only the token in the Intent,
+ * so nothing proportional to the album size goes through Binder. A token outlives the process
+ * only inside the Intent: after process death {@link #attach(String)} returns null and the
+ * caller has to query the album again.
+ */
+public final class MediaSessionRegistry {
+
+    /**
+     * Sessions that are published but never released (e.g. the activity failed to start)
+     * are evicted past this limit, oldest first.
+     */
+    private static final int MAX_SESSIONS = 4;
+
+    private static final LinkedHashMap<String, ArrayList<Media>> sessions = new LinkedHashMap<>();
+
+    private MediaSessionRegistry() {
+    }
+
+    /**
+     * @param media the list is copied, later changes made by the publisher are not seen
+     * @return the token to attach to the session
+     */
+    @NonNull
+    public static synchronized String publish(@NonNull List<Media> media) {
+        // NOTE: random, a token left in an old Intent must not match a session of a new process
+        String token = UUID.randomUUID().toString();
+        sessions.put(token, new ArrayList<>(media));
+
+        Iterator<String> oldest = sessions.keySet().iterator();
+        while (sessions.size() > MAX_SESSIONS) {
+            oldest.next();
+            oldest.remove();
+        }
+        return token;
+    }
+
+    /**
+     * @return the published list, owned by the caller until released, null if it is gone
+     */
+    @Nullable
+    public static synchronized ArrayList<Media> attach(@Nullable String token) {
+        return token != null ? sessions.get(token) : null;
+    }
+
+    public static synchronized void release(@Nullable String token) {
+        if (token != null) sessions.remove(token);
+    }
+}
@@ -0,0 +1,45 @@
+package org.horaapps.leafpic.data.filter;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import org.horaapps.leafpic.data.HandlingAlbums;
+import org.horaapps.leafpic.util.PathTrie;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Tells if a folder is excluded, checking the black and white lists in O(depth of the path).
+ * <p>
+ * The deepest matching rule wins: a white listed folder inside an excluded one is shown.
+ */
+public class ExcludedFoldersFilter {
+
+    private final PathTrie excluded;
+    private final PathTrie included;
+
+    public ExcludedFoldersFilter(@NonNull Collection<String> excluded, @NonNull Collection<String> included) {
+        this.excluded = new PathTrie(excluded);
+        this.included = new PathTrie(included);
+    }
+
+    public static ExcludedFoldersFilter empty() {
+        return new ExcludedFoldersFilter(Collections.emptyList(), Collections.emptyList());
+    }
+
+    public static ExcludedFoldersFilter load(@NonNull Context context) {
+        HandlingAlbums db = HandlingAlbums.getInstance(context.getApplicationContext());
+        return new ExcludedFoldersFilter(db.getExcludedFolders(context), db.getFolders(HandlingAlbums.INCLUDED));
+    }
+
+    public synchronized void exclude(@NonNull String path) {
+        excluded.add(path);
+    }
+
+    public synchronized boolean isExcluded(@NonNull String path) {
+        if (excluded.isEmpty()) return false;
+        int depth = excluded.match(path);
+        return depth != -1 && depth >= included.match(path);
+    }
+}
@@ -2,23 +2,45 @@ package org.horaapps.leafpic.data.filter;
 
 import java.io.File;
 import java.io.FilenameFilter;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
 
 /**
  * Created by dnld on 24/04/16.
  */
 public class ImageFileFilter implements FilenameFilter {
 
-    private Pattern pattern;
+    private static final HashSet<String> IMAGES = new HashSet<>(Arrays.asList(
+            "jpg", "png", "gif", "jpe", "jpeg", "bmp", "webp"));
+    private static final HashSet<String> VIDEOS = new HashSet<>(Arrays.asList(
+            "mp4", "mkv", "webm", "avi"));
+
+    private final boolean includeVideo;
 
     public ImageFileFilter(boolean includeVideo) {
-        pattern = includeVideo
-                ? Pattern.compile(".(jpg|png|gif|jpe|jpeg|bmp|webp|mp4|mkv|webm|avi)$", Pattern.CASE_INSENSITIVE)
-                : Pattern.compile(".(jpg|png|gif|jpe|jpeg|bmp|webp)$", Pattern.CASE_INSENSITIVE);
+        this.includeVideo = includeVideo;
     }
 
+    /**
+     * NOTE: the name is checked first, so only media files are stat-ed.
+     */
     @Override
     public boolean accept(File dir, String filename) {
-        return new File(dir, filename).isFile() && pattern.matcher(filename).find();
+        return isMedia(filename, includeVideo) && new File(dir, filename).isFile();
+    }
+
+    /**
+     * Check only the name of a file, without touching the file system.
+     */
+    public static boolean isMedia(String filename, boolean includeVideo) {
+        String extension = getExtension(filename);
+        return extension != null && (IMAGES.contains(extension) || (includeVideo && VIDEOS.contains(extension)));
+    }
+
+    private static String getExtension(String filename) {
+        int dot = filename.lastIndexOf('.');
+        if (dot == -1 || dot == filename.length() - 1) return null;
+        return filename.substring(dot + 1).toLowerCase(Locale.US);
     }
-}
\ No newline at end of file
+}
@@ -15,6 +15,7 @@ public class MediaFilter {
             case VIDEO:
                 return Media::isVideo;
             case IMAGES: return Media::isImage;
+            case NO_VIDEO: return media -> !media.isVideo();
         }
     }
 }
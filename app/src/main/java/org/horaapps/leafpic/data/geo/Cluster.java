@@ -0,0 +1,20 @@
+package org.horaapps.leafpic.data.geo;
+
+/**
+ * The geotagged media of a cell of the {@link GeoGrid}: how many and their centroid.
+ */
+public final class Cluster {
+
+    public final long cell;
+    public final int zoom;
+    public final int count;
+    public final double latitude, longitude;
+
+    public Cluster(long cell, int zoom, int count, double latitude, double longitude) {
+        this.cell = cell;
+        this.zoom = zoom;
+        this.count = count;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+}
@@ -0,0 +1,157 @@
+package org.horaapps.leafpic.data.geo;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * A quadtree grid over latitude and longitude, with cells addressed like a geohash.
+ * <p>
+ * At zoom z the world is split in 2^z by 2^z cells, equal in degrees. The code of a cell
+ * interleaves the bits of its column and row (Morton order), so the code of its parent at
+ * zoom z - 1 is the code shifted by two bits, and the cells inside it at {@link #MAX_ZOOM} are a
+ * contiguous range of codes: an area is a few ranges of codes, e.g. for an indexed column.
+ */
+public final class GeoGrid {
+
+    /**
+     * The zoom of the cells of the media, about 2 by 1 meters at the equator.
+     */
+    public static final int MAX_ZOOM = 24;
+
+    /**
+     * Cover an area with at most this many cells per side, each one a range of codes.
+     */
+    private static final int MAX_COVER_CELLS = 4;
+
+    private GeoGrid() {
+    }
+
+    /**
+     * @return the code of the cell at {@link #MAX_ZOOM} holding the point
+     */
+    public static long cellOf(double latitude, double longitude) {
+        return interleave(column(longitude, MAX_ZOOM), row(latitude, MAX_ZOOM));
+    }
+
+    /**
+     * @return the code of the cell at zoom holding the cell at {@link #MAX_ZOOM}
+     */
+    public static long parentOf(long cell, int zoom) {
+        return cell >>> (2 * (MAX_ZOOM - zoom));
+    }
+
+    /**
+     * @return [first, last] codes at {@link #MAX_ZOOM} of the cells inside the cell at zoom
+     */
+    @NonNull
+    public static long[] rangeOf(long cell, int zoom) {
+        int shift = 2 * (MAX_ZOOM - zoom);
+        return new long[]{cell << shift, ((cell + 1) << shift) - 1};
+    }
+
+    /**
+     * Cover an area with a few cells, as ranges of codes at {@link #MAX_ZOOM}.
+     * NOTE: the cells can reach past the area, what they cover is larger
+     *
+     * @param west greater than east for an area across the antimeridian
+     * @return [first, last] pairs, sorted and not overlapping
+     */
+    @NonNull
+    public static long[] cover(double south, double west, double north, double east) {
+        if (west > east) {
+            long[] western = cover(south, west, north, 180), eastern = cover(south, -180, north, east);
+            long[] ranges = Arrays.copyOf(eastern, eastern.length + western.length);
+            System.arraycopy(western, 0, ranges, eastern.length, western.length);
+            return merge(ranges);
+        }
+
+        // the deepest zoom with a few cells per side
+        int zoom = MAX_ZOOM;
+        while (zoom > 0 && (column(east, zoom) - column(west, zoom) >= MAX_COVER_CELLS
+                || row(north, zoom) - row(south, zoom) >= MAX_COVER_CELLS))
+            zoom--;
+
+        int x0 = column(west, zoom), x1 = column(east, zoom), y0 = row(south, zoom), y1 = row(north, zoom);
+        long[] ranges = new long[2 * (x1 - x0 + 1) * (y1 - y0 + 1)];
+        int i = 0;
+        for (int x = x0; x <= x1; x++)
+            for (int y = y0; y <= y1; y++) {
+                long[] range = rangeOf(interleave(x, y), zoom);
+                ranges[i++] = range[0];
+                ranges[i++] = range[1];
+            }
+        return merge(ranges);
+    }
+
+    /**
+     * @return the [south, west, north, east] bounds of the cell at zoom
+     */
+    @NonNull
+    public static double[] boundsOf(long cell, int zoom) {
+        double width = 360.0 / (1 << zoom), height = 180.0 / (1 << zoom);
+        int x = deinterleave(cell), y = deinterleave(cell >>> 1);
+        return new double[]{y * height - 90, x * width - 180, (y + 1) * height - 90, (x + 1) * width - 180};
+    }
+
+    private static int column(double longitude, int zoom) {
+        int n = 1 << zoom;
+        return Math.max(0, Math.min(n - 1, (int) Math.floor((longitude + 180) / 360 * n)));
+    }
+
+    private static int row(double latitude, int zoom) {
+        int n = 1 << zoom;
+        return Math.max(0, Math.min(n - 1, (int) Math.floor((latitude + 90) / 180 * n)));
+    }
+
+    /**
+     * Sort the [first, last] pairs and join the ones touching.
+     */
+    private static long[] merge(long[] ranges) {
+        int count = ranges.length / 2;
+        long[][] pairs = new long[count][];
+        for (int i = 0; i < count; i++) pairs[i] = new long[]{ranges[2 * i], ranges[2 * i + 1]};
+        Arrays.sort(pairs, (a, b) -> Long.compare(a[0], b[0]));
+
+        long[] merged = new long[ranges.length];
+        int n = 0;
+        for (long[] pair : pairs) {
+            if (n > 0 && pair[0] <= merged[n - 1] + 1) merged[n - 1] = Math.max(merged[n - 1], pair[1]);
+            else {
+                merged[n++] = pair[0];
+                merged[n++] = pair[1];
+            }
+        }
+        return Arrays.copyOf(merged, n);
+    }
+
+    /**
+     * @return the bits of x in the even positions, the bits of y in the odd ones
+     */
+    private static long interleave(int x, int y) {
+        return spread(x) | (spread(y) << 1);
+    }
+
+    private static long spread(int value) {
+        long v = value & 0xFFFFFFFFL;
+        v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v << 2)) & 0x3333333333333333L;
+        v = (v | (v << 1)) & 0x5555555555555555L;
+        return v;
+    }
+
+    /**
+     * @return the bits in the even positions, packed
+     */
+    private static int deinterleave(long code) {
+        long v = code & 0x5555555555555555L;
+        v = (v | (v >>> 1)) & 0x3333333333333333L;
+        v = (v | (v >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v >>> 4)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v >>> 8)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v >>> 16)) & 0x00000000FFFFFFFFL;
+        return (int) v;
+    }
+}
@@ -0,0 +1,254 @@
+package org.horaapps.leafpic.data.metadata;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * The few EXIF fields worth indexing: date-original, camera make and model, GPS position.
+ * <p>
+ * Only the APP1 segment of a JPEG is read: the markers before it are skipped by their length
+ * and the reading stops there, at most at the start of the scan. The TIFF structure inside is
+ * walked by hand for the handful of tags needed, instead of a full parse of every directory
+ * with metadata-extractor (see {@link MetaDataItem} for the details sheet).
+ */
+public final class ExifHeader {
+
+    private static final int TAG_MAKE = 0x010F;
+    private static final int TAG_MODEL = 0x0110;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_GPS_IFD = 0x8825;
+    private static final int TAG_DATETIME_ORIGINAL = 0x9003;
+    private static final int TAG_OFFSET_TIME_ORIGINAL = 0x9011;
+    private static final int TAG_GPS_LATITUDE_REF = 1;
+    private static final int TAG_GPS_LATITUDE = 2;
+    private static final int TAG_GPS_LONGITUDE_REF = 3;
+    private static final int TAG_GPS_LONGITUDE = 4;
+
+    private static final int TYPE_ASCII = 2;
+    private static final int TYPE_RATIONAL = 5;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    /**
+     * In millis, -1 if missing. NOTE: without an OffsetTimeOriginal it is read in the default time zone
+     */
+    public final long dateOriginal;
+    @Nullable public final String make, model;
+    /**
+     * In degrees, NaN if missing.
+     */
+    public final double latitude, longitude;
+
+    private ExifHeader(long dateOriginal, String make, String model, double latitude, double longitude) {
+        this.dateOriginal = dateOriginal;
+        this.make = make;
+        this.model = model;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    public boolean hasLocation() {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+    }
+
+    /**
+     * @return null if the file is not a JPEG or it has no EXIF
+     */
+    @Nullable
+    public static ExifHeader read(@NonNull File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8192))) {
+            byte[] app1 = readApp1(in);
+            return app1 != null ? parse(app1) : null;
+        } catch (EOFException e) {
+            // truncated file
+            return null;
+        }
+    }
+
+    /**
+     * @return the Exif APP1 segment, without its marker and length
+     */
+    @Nullable
+    private static byte[] readApp1(DataInputStream in) throws IOException {
+        if (in.readUnsignedShort() != 0xFFD8) return null;
+
+        while (true) {
+            if (in.readUnsignedByte() != 0xFF) return null;
+            int marker = in.readUnsignedByte();
+            while (marker == 0xFF) marker = in.readUnsignedByte();
+
+            // end of image or start of scan: no metadata past here
+            if (marker == 0xD9 || marker == 0xDA) return null;
+            // standalone markers, without a length
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) continue;
+
+            int length = in.readUnsignedShort() - 2;
+            if (length < 0) return null;
+
+            if (marker == 0xE1 && length > 14) {
+                byte[] segment = new byte[length];
+                in.readFully(segment);
+                // NOTE: XMP is an APP1 too
+                if (segment[0] == 'E' && segment[1] == 'x' && segment[2] == 'i' && segment[3] == 'f'
+                        && segment[4] == 0 && segment[5] == 0) return segment;
+            } else {
+                skipFully(in, length);
+            }
+        }
+    }
+
+    private static void skipFully(DataInputStream in, int count) throws IOException {
+        while (count > 0) {
+            int skipped = (int) in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() == -1) throw new EOFException();
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    @Nullable
+    private static ExifHeader parse(byte[] segment) {
+        ByteBuffer tiff = ByteBuffer.wrap(segment, 6, segment.length - 6).slice();
+        if (tiff.get(0) == 'I' && tiff.get(1) == 'I') tiff.order(ByteOrder.LITTLE_ENDIAN);
+        else if (tiff.get(0) == 'M' && tiff.get(1) == 'M') tiff.order(ByteOrder.BIG_ENDIAN);
+        else return null;
+        if (tiff.getShort(2) != 42) return null;
+
+        String make = null, model = null, date = null, offset = null;
+        String latitudeRef = null, longitudeRef = null;
+        double[] latitude = null, longitude = null;
+
+        // NOTE: a malformed offset points out of the segment, what was read so far is kept
+        try {
+            int ifd0 = tiff.getInt(4);
+            int exifIfd = -1, gpsIfd = -1;
+            for (int entry = firstEntry(tiff, ifd0), n = entryCount(tiff, ifd0); n > 0; n--, entry += 12) {
+                switch (tag(tiff, entry)) {
+                    case TAG_MAKE: make = readAscii(tiff, entry); break;
+                    case TAG_MODEL: model = readAscii(tiff, entry); break;
+                    case TAG_EXIF_IFD: exifIfd = tiff.getInt(entry + 8); break;
+                    case TAG_GPS_IFD: gpsIfd = tiff.getInt(entry + 8); break;
+                }
+            }
+
+            if (exifIfd > 0) {
+                for (int entry = firstEntry(tiff, exifIfd), n = entryCount(tiff, exifIfd); n > 0; n--, entry += 12) {
+                    switch (tag(tiff, entry)) {
+                        case TAG_DATETIME_ORIGINAL: date = readAscii(tiff, entry); break;
+                        case TAG_OFFSET_TIME_ORIGINAL: offset = readAscii(tiff, entry); break;
+                    }
+                }
+            }
+
+            if (gpsIfd > 0) {
+                for (int entry = firstEntry(tiff, gpsIfd), n = entryCount(tiff, gpsIfd); n > 0; n--, entry += 12) {
+                    switch (tag(tiff, entry)) {
+                        case TAG_GPS_LATITUDE_REF: latitudeRef = readAscii(tiff, entry); break;
+                        case TAG_GPS_LATITUDE: latitude = readRationals(tiff, entry); break;
+                        case TAG_GPS_LONGITUDE_REF: longitudeRef = readAscii(tiff, entry); break;
+                        case TAG_GPS_LONGITUDE: longitude = readRationals(tiff, entry); break;
+                    }
+                }
+            }
+        } catch (IndexOutOfBoundsException ignored) { }
+
+        return new ExifHeader(parseDate(date, offset), make, model,
+                toDegrees(latitude, latitudeRef, "S"), toDegrees(longitude, longitudeRef, "W"));
+    }
+
+    private static int entryCount(ByteBuffer tiff, int ifd) {
+        return tiff.getShort(ifd) & 0xFFFF;
+    }
+
+    private static int firstEntry(ByteBuffer tiff, int ifd) {
+        return ifd + 2;
+    }
+
+    private static int tag(ByteBuffer tiff, int entry) {
+        return tiff.getShort(entry) & 0xFFFF;
+    }
+
+    /**
+     * NOTE: values up to 4 bytes are in the entry itself, the others at the offset it holds
+     */
+    private static int valueOffset(ByteBuffer tiff, int entry, int size) {
+        return size <= 4 ? entry + 8 : tiff.getInt(entry + 8);
+    }
+
+    @Nullable
+    private static String readAscii(ByteBuffer tiff, int entry) {
+        if ((tiff.getShort(entry + 2) & 0xFFFF) != TYPE_ASCII) return null;
+        int count = tiff.getInt(entry + 4);
+        if (count <= 0 || count > tiff.limit()) return null;
+        int offset = valueOffset(tiff, entry, count);
+
+        int length = 0;
+        while (length < count && tiff.get(offset + length) != 0) length++;
+        String value = new String(tiff.array(), tiff.arrayOffset() + offset, length, ASCII).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    @Nullable
+    private static double[] readRationals(ByteBuffer tiff, int entry) {
+        if ((tiff.getShort(entry + 2) & 0xFFFF) != TYPE_RATIONAL) return null;
+        int count = tiff.getInt(entry + 4);
+        if (count != 3) return null;
+        int offset = valueOffset(tiff, entry, count * 8);
+
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            long numerator = tiff.getInt(offset + i * 8) & 0xFFFFFFFFL;
+            long denominator = tiff.getInt(offset + i * 8 + 4) & 0xFFFFFFFFL;
+            if (denominator == 0) return null;
+            values[i] = (double) numerator / denominator;
+        }
+        return values;
+    }
+
+    private static double toDegrees(@Nullable double[] dms, @Nullable String ref, @NonNull String negativeRef) {
+        if (dms == null || ref == null) return Double.NaN;
+        double degrees = dms[0] + dms[1] / 60 + dms[2] / 3600;
+        return ref.equals(negativeRef) ? -degrees : degrees;
+    }
+
+    /**
+     * @param date   "yyyy:MM:dd HH:mm:ss"
+     * @param offset "+HH:mm", null for the default time zone
+     */
+    private static long parseDate(@Nullable String date, @Nullable String offset) {
+        if (date == null || date.length() < 19) return -1;
+        try {
+            int year = Integer.parseInt(date.substring(0, 4));
+            int month = Integer.parseInt(date.substring(5, 7));
+            int day = Integer.parseInt(date.substring(8, 10));
+            int hour = Integer.parseInt(date.substring(11, 13));
+            int minute = Integer.parseInt(date.substring(14, 16));
+            int second = Integer.parseInt(date.substring(17, 19));
+            // "0000:00:00 00:00:00" stands for unknown
+            if (year == 0 || month < 1 || month > 12 || day < 1 || day > 31) return -1;
+
+            TimeZone timeZone = offset != null && offset.length() == 6
+                    ? TimeZone.getTimeZone("GMT" + offset) : TimeZone.getDefault();
+            Calendar calendar = Calendar.getInstance(timeZone);
+            calendar.clear();
+            calendar.set(year, month - 1, day, hour, minute, second);
+            return calendar.getTimeInMillis();
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
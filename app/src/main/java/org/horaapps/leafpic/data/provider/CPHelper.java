@@ -8,14 +8,22 @@ import com.orhanobut.hawk.Hawk;
 import org.horaapps.leafpic.data.Album;
 import org.horaapps.leafpic.data.Media;
 import org.horaapps.leafpic.data.StorageHelper;
-import org.horaapps.leafpic.data.filter.FoldersFileFilter;
+import org.horaapps.leafpic.data.filter.ExcludedFoldersFilter;
+import org.horaapps.leafpic.data.filter.FilterMode;
+import org.horaapps.leafpic.data.filter.IMediaFilter;
 import org.horaapps.leafpic.data.filter.ImageFileFilter;
+import org.horaapps.leafpic.data.filter.MediaFilter;
+import org.horaapps.leafpic.data.sort.MediaComparators;
 import org.horaapps.leafpic.data.sort.SortingMode;
 import org.horaapps.leafpic.data.sort.SortingOrder;
+import org.horaapps.leafpic.timeline.DateBuckets;
+import org.horaapps.leafpic.util.FileStat;
 import org.horaapps.leafpic.util.preferences.Prefs;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
 
 import io.reactivex.Observable;
 import io.reactivex.ObservableEmitter;
@@ -27,84 +35,70 @@ import io.reactivex.ObservableEmitter;
 
 public class CPHelper {
 
-    public static Observable<Album> getAlbums(Context context, boolean hidden, ArrayList<String> excluded ,SortingMode sortingMode, SortingOrder sortingOrder) {
-        return hidden ? getHiddenAlbums(context, excluded) : getAlbums(context, excluded, sortingMode, sortingOrder);
-    }
-
-    private static String getHavingCluause(int excludedCount){
-
-        if (excludedCount == 0)
-            return "(";
-
-        StringBuilder res = new StringBuilder();
-        res.append("HAVING (");
-
-        res.append(MediaStore.Images.Media.DATA).append(" NOT LIKE ?");
-
-        for (int i = 1; i < excludedCount; i++)
-            res.append(" AND ")
-                    .append(MediaStore.Images.Media.DATA)
-                    .append(" NOT LIKE ?");
-
-        // NOTE: dont close ths parenthesis it will be closed by ContentResolver
-        //res.append(")");
-
-        return res.toString();
+    /**
+     * The ids joined in the selection of a query, see {@link #getMediaByIds(Context, long[], FilterMode)}.
+     */
+    private static final int IDS_PER_QUERY = 500;
 
+    public static Observable<Album> getAlbums(Context context, boolean hidden, ExcludedFoldersFilter excluded, SortingMode sortingMode, SortingOrder sortingOrder) {
+        return hidden ? getHiddenAlbums(context, excluded) : getAlbums(context, excluded, sortingMode, sortingOrder);
     }
 
-    private static Observable<Album> getAlbums(Context context, ArrayList<String> excludedAlbums, SortingMode sortingMode, SortingOrder sortingOrder) {
+    private static Observable<Album> getAlbums(Context context, ExcludedFoldersFilter excludedAlbums, SortingMode sortingMode, SortingOrder sortingOrder) {
 
         Query.Builder query = new Query.Builder()
                 .uri(MediaStore.Files.getContentUri("external"))
-                .projection(Album.getProjection())
+                .profile(Query.Profile.ALBUM)
                 .sort(sortingMode.getAlbumsColumn())
                 .ascending(sortingOrder.isAscending());
 
-        ArrayList<Object> args = new ArrayList<>();
-
+        // NOTE: dont close the parenthesis of the group by, it will be closed by ContentResolver
         if (Prefs.showVideos()) {
-            query.selection(String.format("%s=? or %s=?) group by (%s) %s ",
+            query.selection(String.format("%s=? or %s=?) group by (%s",
                     MediaStore.Files.FileColumns.MEDIA_TYPE,
                     MediaStore.Files.FileColumns.MEDIA_TYPE,
-                    MediaStore.Files.FileColumns.PARENT,
-                    getHavingCluause(excludedAlbums.size())));
-            args.add(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE);
-            args.add(MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO);
+                    MediaStore.Files.FileColumns.PARENT));
+            query.args(
+                    MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE,
+                    MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO);
         } else {
-            query.selection(String.format("%s=?) group by (%s) %s ",
+            query.selection(String.format("%s=?) group by (%s",
                     MediaStore.Files.FileColumns.MEDIA_TYPE,
-                    MediaStore.Files.FileColumns.PARENT,
-                    getHavingCluause(excludedAlbums.size())));
-            args.add(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE);
+                    MediaStore.Files.FileColumns.PARENT));
+            query.args(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE);
         }
 
-
-        //NOTE: LIKE params for query
-        for (String s : excludedAlbums)
-            args.add(s+"%");
-
-
-        query.args(args.toArray());
-
-
-        return QueryUtils.query(query.build(), context.getContentResolver(), Album::new);
+        // NOTE: excluded folders are filtered here instead of growing the query with a LIKE for each one
+        return QueryUtils.query(query.build(), context.getContentResolver(), Album::new)
+                .filter(album -> !excludedAlbums.isExcluded(album.getPath()));
     }
 
-    private static Observable<Album> getHiddenAlbums(Context context, ArrayList<String> excludedAlbums) {
+    private static Observable<Album> getHiddenAlbums(Context context, ExcludedFoldersFilter excludedAlbums) {
 
         boolean includeVideo = Prefs.showVideos();
         return Observable.create(subscriber -> {
+            HiddenFoldersIndex index = HiddenFoldersIndex.getInstance(context);
             try {
+                index.open();
+                HashSet<String> added = new HashSet<>();
 
+                // NOTE: last hidden albums are only a seed to show something quickly,
+                // they are skipped when found again while walking the storage
                 ArrayList<String> lastHidden = Hawk.get("h", new ArrayList<>());
-                for (String s : lastHidden)
-                    checkAndAddFolder(new File(s), subscriber, includeVideo);
+                for (String s : lastHidden) {
+                    File dir = new File(s);
+                    HiddenFoldersIndex.Entry entry;
+                    if (!excludedAlbums.isExcluded(s) && (entry = index.get(dir)) != null && isHidden(dir, entry))
+                        addFolder(dir, entry, subscriber, added, includeVideo);
+                }
 
-                lastHidden.addAll(excludedAlbums);
+                for (File storage : StorageHelper.getStorageRoots(context)) {
+                    HiddenFoldersIndex.Entry entry = index.get(storage);
+                    if (entry != null && !excludedAlbums.isExcluded(storage.getPath()))
+                        fetchRecursivelyHiddenFolder(index, storage, entry, subscriber, excludedAlbums, added, includeVideo);
+                }
 
-                for (File storage : StorageHelper.getStorageRoots(context))
-                    fetchRecursivelyHiddenFolder(storage, subscriber, lastHidden, includeVideo);
+                index.save();
                 subscriber.onComplete();
             } catch (Exception err) {
                 subscriber.onError(err);
@@ -112,100 +106,121 @@ public class CPHelper {
         });
     }
 
-    private static void fetchRecursivelyHiddenFolder(File dir, ObservableEmitter<Album> emitter, ArrayList<String> excludedAlbums, boolean includeVideo) {
-        if (!isExcluded(dir.getPath(), excludedAlbums)) {
-            File[] folders = dir.listFiles(new FoldersFileFilter());
-            if (folders != null) {
-                for (File temp : folders) {
-                    File nomedia = new File(temp, ".nomedia");
-                    if (!isExcluded(temp.getPath(), excludedAlbums) && (nomedia.exists() || temp.isHidden()))
-                        checkAndAddFolder(temp, emitter, includeVideo);
+    private static void fetchRecursivelyHiddenFolder(HiddenFoldersIndex index, File dir, HiddenFoldersIndex.Entry dirEntry, ObservableEmitter<Album> emitter, ExcludedFoldersFilter excludedAlbums, HashSet<String> added, boolean includeVideo) {
+        for (String name : dirEntry.children) {
+            File temp = new File(dir, name);
+            if (excludedAlbums.isExcluded(temp.getPath())) continue;
 
-                    fetchRecursivelyHiddenFolder( temp, emitter, excludedAlbums, includeVideo);
-                }
-            }
-        }
-    }
-
-    private static void checkAndAddFolder(File dir, ObservableEmitter<Album> emitter, boolean includeVideo) {
-        File[] files = dir.listFiles(new ImageFileFilter(includeVideo));
-        if (files != null && files.length > 0) {
-            //valid folder
+            HiddenFoldersIndex.Entry entry = index.get(temp);
+            if (entry == null) continue;
 
-            long lastMod = Long.MIN_VALUE;
-            File choice = null;
-            for (File file : files) {
-                if (file.lastModified() > lastMod) {
-                    choice = file;
-                    lastMod = file.lastModified();
-                }
-            }
-            if (choice != null) {
-                Album asd = new Album(dir.getAbsolutePath(), dir.getName(), files.length, lastMod);
-                asd.setLastMedia(new Media(choice.getAbsolutePath()));
-                emitter.onNext(asd);
-            }
+            if (isHidden(temp, entry))
+                addFolder(temp, entry, emitter, added, includeVideo);
 
+            fetchRecursivelyHiddenFolder(index, temp, entry, emitter, excludedAlbums, added, includeVideo);
         }
+    }
 
+    private static boolean isHidden(File dir, HiddenFoldersIndex.Entry entry) {
+        return entry.nomedia || dir.getName().startsWith(".");
     }
 
-    private static boolean isExcluded(String path, ArrayList<String> excludedAlbums) {
-        for(String s : excludedAlbums) if (path.startsWith(s)) return true;
-        return false;
+    private static void addFolder(File dir, HiddenFoldersIndex.Entry entry, ObservableEmitter<Album> emitter, HashSet<String> added, boolean includeVideo) {
+        int count = entry.getCount(includeVideo);
+        String newest = entry.getNewest(includeVideo);
+        if (count > 0 && newest != null && added.add(dir.getPath())) {
+            Album album = new Album(dir.getAbsolutePath(), dir.getName(), count, entry.getNewestDate(includeVideo));
+            album.setLastMedia(new Media(newest));
+            emitter.onNext(album);
+        }
     }
 
     //region Media
 
     public static Observable<Media> getMedia(Context context, Album album) {
+        return getMedia(context, album, FilterMode.ALL);
+    }
 
-        if (album.getId() == -1) return getMediaFromStorage(context, album);
-        else if (album.getId() == Album.ALL_MEDIA_ALBUM_ID)
-            return getAllMediaFromMediaStore(context, album.settings.getSortingMode(), album.settings.getSortingOrder());
-        else
-            return getMediaFromMediaStore(context, album, album.settings.getSortingMode(), album.settings.getSortingOrder());
+    /**
+     * Get the media of an album matching a filter.
+     * NOTE: the filter is part of the query, rows that would be discarded are never fetched
+     */
+    public static Observable<Media> getMedia(Context context, Album album, FilterMode filterMode) {
+        return getMedia(context, album, album.settings.getSortingMode(), album.settings.getSortingOrder(), filterMode);
     }
 
     public static Observable<Media> getMedia(Context context, Album album, SortingMode sortingMode, SortingOrder sortingOrder) {
-
-        if (album.getId() == -1) return getMediaFromStorage(context, album);
-        else if (album.getId() == Album.ALL_MEDIA_ALBUM_ID)
-            return getAllMediaFromMediaStore(context, sortingMode, sortingOrder);
-        else return getMediaFromMediaStore(context, album, sortingMode, sortingOrder);
+        return getMedia(context, album, sortingMode, sortingOrder, FilterMode.ALL);
     }
 
-    private static Observable<Media> getAllMediaFromMediaStore(Context context, SortingMode sortingMode, SortingOrder sortingOrder) {
-        Query.Builder query = new Query.Builder()
-                .uri(MediaStore.Files.getContentUri("external"))
-                .projection(Media.getProjection())
-                .sort(sortingMode.getMediaColumn())
-                .ascending(sortingOrder.isAscending());
+    public static Observable<Media> getMedia(Context context, Album album, SortingMode sortingMode, SortingOrder sortingOrder, FilterMode filterMode) {
 
-        if (Prefs.showVideos()) {
-            query.selection(String.format("(%s=? or %s=?)",
-                    MediaStore.Files.FileColumns.MEDIA_TYPE,
-                    MediaStore.Files.FileColumns.MEDIA_TYPE));
-            query.args(
-                    MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE,
-                    MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO);
-        } else {
-            query.selection(String.format("%s=?",
-                    MediaStore.Files.FileColumns.MEDIA_TYPE));
-            query.args(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE);
-        }
+        if (filterMode == null) filterMode = FilterMode.ALL;
+
+        if (album.getId() == -1) return getMediaFromStorage(context, album, filterMode);
+        else return getMediaFromMediaStore(context, album, sortingMode, sortingOrder, filterMode);
+    }
 
-        return QueryUtils.query(query.build(), context.getContentResolver(), new Media());
+    /**
+     * Translate a FilterMode in a selection on MEDIA_TYPE and MIME_TYPE.
+     *
+     * @return false if nothing can match the filter
+     */
+    private static boolean appendFilterSelection(FilterMode filterMode, StringBuilder selection, ArrayList<Object> args) {
+        boolean showVideos = Prefs.showVideos();
+        switch (filterMode) {
+            case ALL: default:
+                if (showVideos) {
+                    selection.append(String.format("(%s=? or %s=?)",
+                            MediaStore.Files.FileColumns.MEDIA_TYPE,
+                            MediaStore.Files.FileColumns.MEDIA_TYPE));
+                    args.add(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE);
+                    args.add(MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO);
+                    return true;
+                }
+                // fall through, without videos it is the same as IMAGES
+
+            case IMAGES: case NO_VIDEO:
+                selection.append(String.format("%s=?", MediaStore.Files.FileColumns.MEDIA_TYPE));
+                args.add(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE);
+                return true;
+
+            case GIF:
+                selection.append(String.format("%s=? and %s=?",
+                        MediaStore.Files.FileColumns.MEDIA_TYPE,
+                        MediaStore.Files.FileColumns.MIME_TYPE));
+                args.add(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE);
+                args.add("image/gif");
+                return true;
+
+            case VIDEO:
+                selection.append(String.format("%s=?", MediaStore.Files.FileColumns.MEDIA_TYPE));
+                args.add(MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO);
+                return showVideos;
+        }
     }
 
-    private static Observable<Media> getMediaFromStorage(Context context, Album album) {
+    private static Observable<Media> getMediaFromStorage(Context context, Album album, FilterMode filterMode) {
 
+        boolean includeVideo = Prefs.showVideos();
+        IMediaFilter filter = MediaFilter.getFilter(filterMode);
         return Observable.create(subscriber -> {
             File dir = new File(album.getPath());
-            File[] files = dir.listFiles(new ImageFileFilter(Prefs.showVideos()));
+            // NOTE: names are filtered by extension first, then each media file is stat-ed once
+            String[] names = dir.list();
             try {
-                if (files != null && files.length > 0)
-                    for (File file : files)
-                        subscriber.onNext(new Media(file));
+                if (names != null)
+                    for (String name : names) {
+                        if (!ImageFileFilter.isMedia(name, includeVideo)) continue;
+
+                        File file = new File(dir, name);
+                        FileStat stat = FileStat.of(file);
+                        if (stat == null || !stat.isRegularFile()) continue;
+
+                        // NOTE: there is no query to push the filter in, it is applied here instead
+                        Media media = new Media(file.getPath(), stat.lastModified(), stat.size());
+                        if (filter.accept(media)) subscriber.onNext(media);
+                    }
                 subscriber.onComplete();
 
             }
@@ -214,31 +229,166 @@ public class CPHelper {
 
     }
 
-    private static Observable<Media> getMediaFromMediaStore(Context context, Album album, SortingMode sortingMode, SortingOrder sortingOrder) {
+    private static Observable<Media> getMediaFromMediaStore(Context context, Album album, SortingMode sortingMode, SortingOrder sortingOrder, FilterMode filterMode) {
+        Query.Profile profile = getGridProfile(sortingMode);
+        Query query = getMediaQuery(album, profile, sortingMode, sortingOrder, filterMode);
+        if (query == null) return Observable.empty();
+        return QueryUtils.query(query, context.getContentResolver(), Media.reader(profile))
+                .map(ExifIndex.getInstance(context)::apply);
+    }
+
+    /**
+     * Get the media of an album taken in [from, to] (DATE_TAKEN, in millis), sorted by it.
+     * NOTE: the range is part of the query, only its rows are fetched. Media without a DATE_TAKEN
+     * are read as taken at 0, a range starting at or before it includes them.
+     * The dates of the {@link ExifIndex} are applied after the query: the media may come out of
+     * the range and out of order by a little, when the MediaStore got them wrong.
+     *
+     * @param limit at most this many media, the first ones in the sorting order; -1 for all of them
+     */
+    public static Observable<Media> getMediaTakenBetween(Context context, Album album, FilterMode filterMode, long from, long to, SortingOrder sortingOrder, int limit) {
+        if (album.getId() == -1)
+            return Observable.error(new IllegalArgumentException("Not an album of the MediaStore: " + album.getPath()));
+
+        Query.Builder query = getTakenBetweenQueryBuilder(album, filterMode, from, to, sortingOrder);
+        if (query == null) return Observable.empty();
+        return QueryUtils.query(query.limit(limit).build(), context.getContentResolver(), Media.reader(Query.Profile.GRID))
+                .map(ExifIndex.getInstance(context)::apply);
+    }
+
+    /**
+     * Get the DATE_TAKEN of the first media of an album taken in [from, to], in the sorting order,
+     * as stored in the MediaStore: the dates of the {@link ExifIndex} are not applied, the date is
+     * in the range of the query. Nothing if there is no such media.
+     */
+    public static Observable<Long> getFirstDateTakenBetween(Context context, Album album, FilterMode filterMode, long from, long to, SortingOrder sortingOrder) {
+        if (album.getId() == -1)
+            return Observable.error(new IllegalArgumentException("Not an album of the MediaStore: " + album.getPath()));
+
+        Query.Builder query = getTakenBetweenQueryBuilder(album, filterMode, from, to, sortingOrder);
+        if (query == null) return Observable.empty();
+        query.projection(new String[]{MediaStore.Images.Media.DATE_TAKEN}).limit(1);
+        return QueryUtils.querySingle(query.build(), context.getContentResolver(), cur -> cur.getLong(0));
+    }
+
+    /**
+     * @return the query of the media of an album taken in [from, to], sorted by DATE_TAKEN, null if nothing can match
+     */
+    private static Query.Builder getTakenBetweenQueryBuilder(Album album, FilterMode filterMode, long from, long to, SortingOrder sortingOrder) {
+        Query.Builder query = getMediaQueryBuilder(album, Query.Profile.GRID, filterMode != null ? filterMode : FilterMode.ALL);
+        if (query == null) return null;
+        return query.between(MediaStore.Images.Media.DATE_TAKEN, from, to, from <= 0 && to >= 0)
+                .sort(MediaStore.Images.Media.DATE_TAKEN)
+                .ascending(sortingOrder.isAscending());
+    }
+
+    /**
+     * Get the media taken on the month and day of today in the previous years, newest first.
+     * NOTE: the ids come from the {@link DayOfYearIndex} as indexed so far, only their rows are queried
+     */
+    public static Observable<Media> getMediaOnThisDay(Context context, FilterMode filterMode) {
+        return Observable.defer(() -> {
+            Calendar calendar = Calendar.getInstance();
+            int[] monthDays = DateBuckets.onThisDay(new DateBuckets().epochDay(calendar.getTimeInMillis()));
+            calendar.set(Calendar.DAY_OF_YEAR, 1);
+            calendar.set(Calendar.HOUR_OF_DAY, 0);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+
+            long[] ids = DayOfYearIndex.getInstance(context).getIds(monthDays, calendar.getTimeInMillis());
+            if (ids.length == 0) return Observable.empty();
+            return getMediaByIds(context, ids, filterMode);
+        });
+    }
+
+    /**
+     * Get the media taken in an area, newest first.
+     * NOTE: the ids come from the {@link ExifIndex}, only their rows are queried
+     *
+     * @param west greater than east for an area across the antimeridian
+     */
+    public static Observable<Media> getMediaWithin(Context context, double south, double west, double north, double east, FilterMode filterMode) {
+        return Observable.defer(() -> {
+            long[] ids = ExifIndex.getInstance(context).getIdsWithin(south, west, north, east);
+            if (ids.length == 0) return Observable.empty();
+            return getMediaByIds(context, ids, filterMode);
+        });
+    }
 
+    /**
+     * @return the media with the ids, newest first
+     */
+    private static Observable<Media> getMediaByIds(Context context, long[] ids, FilterMode filterMode) {
+        Query.Builder query = getMediaQueryBuilder(Album.getAllMediaAlbum(), Query.Profile.GRID,
+                filterMode != null ? filterMode : FilterMode.ALL);
+        if (query == null) return Observable.empty();
+
+        // NOTE: ids are numbers, they are joined in the selection instead of binding an arg each;
+        // a query per chunk of them keeps the selection far from the limits of SQLite and of Binder
+        String selection = query.selection;
+        ArrayList<Query> queries = new ArrayList<>(ids.length / IDS_PER_QUERY + 1);
+        for (int from = 0; from < ids.length; from += IDS_PER_QUERY) {
+            query.selection(String.format("(%s) and %s in (%s)", selection, MediaStore.Files.FileColumns._ID,
+                    joinIds(ids, from, Math.min(ids.length, from + IDS_PER_QUERY))));
+            queries.add(query.build());
+        }
+        // the chunks are sorted together, by the dates of the ExifIndex
+        return Observable.fromIterable(queries)
+                .concatMap(chunk -> QueryUtils.query(chunk, context.getContentResolver(), Media.reader(Query.Profile.GRID)))
+                .map(ExifIndex.getInstance(context)::apply)
+                .toSortedList(MediaComparators.getComparator(SortingMode.DATE, SortingOrder.DESCENDING))
+                .flattenAsObservable(media -> media);
+    }
+
+    /**
+     * @return the ids in [from, to) separated by commas
+     */
+    private static String joinIds(long[] ids, int from, int to) {
+        StringBuilder list = new StringBuilder();
+        for (int i = from; i < to; i++) list.append(i == from ? "" : ",").append(ids[i]);
+        return list.toString();
+    }
+
+    /**
+     * @return the profile of the grid of an album: the sizes are loaded only to sort by them
+     */
+    public static Query.Profile getGridProfile(SortingMode sortingMode) {
+        return sortingMode == SortingMode.SIZE ? Query.Profile.GRID_BY_SIZE : Query.Profile.GRID;
+    }
+
+    /**
+     * @return the query of the media of an album of the MediaStore, or "All Media", null if nothing can match
+     */
+    private static Query getMediaQuery(Album album, Query.Profile profile, SortingMode sortingMode, SortingOrder sortingOrder, FilterMode filterMode) {
+        Query.Builder query = getMediaQueryBuilder(album, profile, filterMode);
+        if (query == null) return null;
+        return query.sort(sortingMode.getMediaColumn())
+                .ascending(sortingOrder.isAscending())
+                .build();
+    }
+
+    /**
+     * @return the query of the media of an album, without sorting, null if nothing can match
+     */
+    private static Query.Builder getMediaQueryBuilder(Album album, Query.Profile profile, FilterMode filterMode) {
         Query.Builder query = new Query.Builder()
                 .uri(MediaStore.Files.getContentUri("external"))
-                .projection(Media.getProjection())
-                .sort(sortingMode.getMediaColumn())
-                .ascending(sortingOrder.isAscending());
+                .profile(profile);
 
-        if (Prefs.showVideos()) {
-            query.selection(String.format("(%s=? or %s=?) and %s=?",
-                    MediaStore.Files.FileColumns.MEDIA_TYPE,
-                    MediaStore.Files.FileColumns.MEDIA_TYPE,
-                    MediaStore.Files.FileColumns.PARENT));
-            query.args(
-                    MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE,
-                    MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO,
-                    album.getId());
-        } else {
-            query.selection(String.format("%s=? and %s=?",
-                    MediaStore.Files.FileColumns.MEDIA_TYPE,
-                    MediaStore.Files.FileColumns.PARENT));
-            query.args(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE, album.getId());
+        StringBuilder selection = new StringBuilder();
+        ArrayList<Object> args = new ArrayList<>();
+        if (!appendFilterSelection(filterMode, selection, args))
+            return null;
+
+        if (album.getId() != Album.ALL_MEDIA_ALBUM_ID) {
+            selection.insert(0, "(").append(String.format(") and %s=?", MediaStore.Files.FileColumns.PARENT));
+            args.add(album.getId());
         }
 
-        return QueryUtils.query(query.build(), context.getContentResolver(), Media::new);
+        query.selection(selection.toString());
+        query.args(args.toArray());
+        return query;
     }
     //endregion
 }
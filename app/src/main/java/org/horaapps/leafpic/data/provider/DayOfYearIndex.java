@@ -0,0 +1,284 @@
+package org.horaapps.leafpic.data.provider;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+
+import org.horaapps.leafpic.timeline.DateBuckets;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Persistent map from the day of the year (month and day, see {@link DateBuckets#monthDayOf(int)})
+ * to the ids of the media taken on it, for "On this day".
+ * <p>
+ * A row per media, indexed by day: the media of a day are read with a lookup, not a scan of the
+ * library. The index is caught up in the background on every change of the MediaStore once it has
+ * been used, reading only the media added or modified since: see {@link #update()}. The lookups
+ * answer from the rows indexed so far: only the first one on an empty index waits for it to be built.
+ * NOTE: the days follow the time zone of when the media were indexed
+ */
+public class DayOfYearIndex extends SQLiteOpenHelper {
+
+    private static final int DATABASE_VERSION = 2;
+    private static final String DATABASE_NAME = "day_of_year.db";
+    private static final String TABLE_MEDIA = "media";
+
+    private static final String MEDIA_ID = "id";
+    private static final String MEDIA_DAY = "day";
+    private static final String MEDIA_DATE = "date";
+    private static final String MEDIA_MTIME = "mtime";
+
+    private static final String[] PROJECTION = {
+            MediaStore.Files.FileColumns._ID,
+            MediaStore.Images.Media.DATE_TAKEN,
+            MediaStore.Files.FileColumns.DATE_MODIFIED};
+
+    private static DayOfYearIndex mInstance = null;
+
+    private final Context context;
+    private volatile boolean observing = false;
+    private final AtomicBoolean updatePending = new AtomicBoolean();
+
+    private DayOfYearIndex(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context;
+        // NOTE: the days are read while an update writes
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    public static synchronized DayOfYearIndex getInstance(Context context) {
+        if (mInstance == null)
+            mInstance = new DayOfYearIndex(context.getApplicationContext());
+        return mInstance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " +
+                TABLE_MEDIA + "(" +
+                MEDIA_ID + " INTEGER PRIMARY KEY," +
+                MEDIA_DAY + " INTEGER NOT NULL," +
+                MEDIA_DATE + " INTEGER NOT NULL," +
+                MEDIA_MTIME + " INTEGER NOT NULL)");
+        db.execSQL(String.format("CREATE INDEX %s_%s ON %s(%s, %s)",
+                TABLE_MEDIA, MEDIA_DAY, TABLE_MEDIA, MEDIA_DAY, MEDIA_DATE));
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_MEDIA);
+        onCreate(db);
+    }
+
+    /**
+     * Index the media added to the MediaStore or modified since the last call and forget the
+     * deleted ones, the first call indexes them all.
+     * <p>
+     * Only the media past the last id or the last DATE_MODIFIED indexed are read, the ids are walked
+     * only when the MediaStore has fewer media up to the last id than the index has rows.
+     * NOTE: blocking, not on the main thread
+     */
+    public synchronized void update() {
+        registerObserver();
+        // the changes notified from now on need another update
+        updatePending.set(false);
+        SQLiteDatabase db = getWritableDatabase();
+
+        long maxId, maxMtime;
+        int indexedCount;
+        Cursor watermark = db.rawQuery(String.format("SELECT max(%s), max(%s), count(*) FROM %s",
+                MEDIA_ID, MEDIA_MTIME, TABLE_MEDIA), null);
+        try {
+            watermark.moveToFirst();
+            maxId = watermark.getLong(0);
+            maxMtime = watermark.getLong(1);
+            indexedCount = watermark.getInt(2);
+        } finally {
+            watermark.close();
+        }
+
+        db.beginTransaction();
+        try {
+            deleteVanished(db, maxId, indexedCount);
+            // NOTE: numbers, joined in the selection instead of binding an arg each
+            index(db, String.format(Locale.US, "%s>%d or %s>%d",
+                    MediaStore.Files.FileColumns._ID, maxId, MediaStore.Files.FileColumns.DATE_MODIFIED, maxMtime));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Index again the media whose DATE_TAKEN was changed, e.g. by
+     * {@link org.horaapps.leafpic.data.MediaHelper#repairDates}: their DATE_MODIFIED can go back.
+     * NOTE: blocking, not on the main thread
+     */
+    public synchronized void update(@NonNull long[] ids) {
+        SQLiteDatabase db = getWritableDatabase();
+        // NOTE: never indexed, the first update indexes them all
+        if (ids.length == 0 || DatabaseUtils.queryNumEntries(db, TABLE_MEDIA) == 0) return;
+
+        StringBuilder selection = new StringBuilder(MediaStore.Files.FileColumns._ID).append(" in (");
+        for (int i = 0; i < ids.length; i++) selection.append(i > 0 ? "," : "").append(ids[i]);
+        db.beginTransaction();
+        try {
+            index(db, selection.append(")").toString());
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private void deleteVanished(SQLiteDatabase db, long maxId, int indexedCount) {
+        if (indexedCount == 0) return;
+        String upToMaxId = String.format(Locale.US, "%s<=%d and %s is not null",
+                MediaStore.Files.FileColumns._ID, maxId, MediaStore.Images.Media.DATE_TAKEN);
+        Cursor count = mediaQuery(new String[]{"count(*)"}, upToMaxId).getCursor(context.getContentResolver());
+        if (count == null) return;
+        try {
+            // NOTE: a media getting a DATE_TAKEN without a new DATE_MODIFIED can hide a deletion, rare
+            if (!count.moveToFirst() || count.getInt(0) == indexedCount) return;
+        } finally {
+            count.close();
+        }
+
+        long[] indexedIds;
+        Cursor indexed = db.query(TABLE_MEDIA, new String[]{MEDIA_ID}, null, null, null, null, MEDIA_ID);
+        try {
+            indexedIds = new long[indexed.getCount()];
+            for (int i = 0; indexed.moveToNext(); i++) indexedIds[i] = indexed.getLong(0);
+        } finally {
+            indexed.close();
+        }
+
+        Cursor cur = mediaQuery(new String[]{MediaStore.Files.FileColumns._ID}, upToMaxId).getCursor(context.getContentResolver());
+        if (cur == null) return;
+        SQLiteStatement delete = db.compileStatement(String.format("DELETE FROM %s WHERE %s=?", TABLE_MEDIA, MEDIA_ID));
+        int next = 0;
+        try {
+            // both sorted by id, the indexed ones missing from the MediaStore are gone
+            while (next < indexedIds.length) {
+                long id = cur.moveToNext() ? cur.getLong(0) : Long.MAX_VALUE;
+                for (; next < indexedIds.length && indexedIds[next] < id; next++)
+                    delete(delete, indexedIds[next]);
+                if (next < indexedIds.length && indexedIds[next] == id) next++;
+            }
+        } finally {
+            delete.close();
+            cur.close();
+        }
+    }
+
+    /**
+     * Write the rows of the media matching the selection, delete the ones without a DATE_TAKEN.
+     */
+    private void index(SQLiteDatabase db, String selection) {
+        Cursor cur = mediaQuery(PROJECTION, selection).getCursor(context.getContentResolver());
+        if (cur == null) return;
+
+        DateBuckets dateBuckets = new DateBuckets();
+        SQLiteStatement insert = db.compileStatement(String.format("INSERT OR REPLACE INTO %s(%s, %s, %s, %s) VALUES (?, ?, ?, ?)",
+                TABLE_MEDIA, MEDIA_ID, MEDIA_DAY, MEDIA_DATE, MEDIA_MTIME));
+        SQLiteStatement delete = db.compileStatement(String.format("DELETE FROM %s WHERE %s=?", TABLE_MEDIA, MEDIA_ID));
+        try {
+            while (cur.moveToNext()) {
+                long id = cur.getLong(0);
+                // NOTE: a media without a DATE_TAKEN is not on any day, until it gets one
+                if (cur.isNull(1)) {
+                    delete(delete, id);
+                    continue;
+                }
+                long date = cur.getLong(1);
+                insert.bindLong(1, id);
+                insert.bindLong(2, DateBuckets.monthDayOf(dateBuckets.epochDay(date)));
+                insert.bindLong(3, date);
+                insert.bindLong(4, cur.getLong(2));
+                insert.executeInsert();
+            }
+        } finally {
+            insert.close();
+            delete.close();
+            cur.close();
+        }
+    }
+
+    /**
+     * @return the query of the images and videos of the MediaStore matching the selection, sorted by id
+     */
+    private static Query mediaQuery(String[] projection, String selection) {
+        return new Query.Builder()
+                .uri(MediaStore.Files.getContentUri("external"))
+                .projection(projection)
+                .selection(String.format("(%s=? or %s=?) and (%s)",
+                        MediaStore.Files.FileColumns.MEDIA_TYPE,
+                        MediaStore.Files.FileColumns.MEDIA_TYPE,
+                        selection))
+                .args(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE, MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO)
+                .sort(MediaStore.Files.FileColumns._ID)
+                .ascending(true)
+                .build();
+    }
+
+    private static void delete(SQLiteStatement delete, long id) {
+        delete.bindLong(1, id);
+        delete.executeUpdateDelete();
+    }
+
+    /**
+     * The media indexed so far, the first call starts indexing in the background.
+     * NOTE: not synchronized, an update can take long
+     *
+     * @param monthDays see {@link DateBuckets#monthDayOf(int)}
+     * @param before    only the media taken before this date
+     * @return the ids of the media taken on the days of the year, newest first
+     */
+    @NonNull
+    public long[] getIds(@NonNull int[] monthDays, long before) {
+        if (!observing && DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_MEDIA) == 0) update();
+        else start();
+        StringBuilder days = new StringBuilder();
+        for (int monthDay : monthDays) days.append(days.length() > 0 ? "," : "").append(monthDay);
+        Cursor cur = getReadableDatabase().query(TABLE_MEDIA, new String[]{MEDIA_ID},
+                String.format(Locale.US, "%s in (%s) and %s<%d", MEDIA_DAY, days, MEDIA_DATE, before),
+                null, null, null, MEDIA_DATE + " DESC");
+        try {
+            long[] ids = new long[cur.getCount()];
+            for (int i = 0; cur.moveToNext(); i++) ids[i] = cur.getLong(0);
+            return ids;
+        } finally {
+            cur.close();
+        }
+    }
+
+    /**
+     * Index the media of the MediaStore in the background, once.
+     */
+    private void start() {
+        if (!observing) scheduleUpdate();
+    }
+
+    private void scheduleUpdate() {
+        if (updatePending.compareAndSet(false, true))
+            Schedulers.io().scheduleDirect(this::update);
+    }
+
+    /**
+     * Catch up on every change of the MediaStore, from the first update on.
+     * NOTE: a burst of changes schedules a single update
+     */
+    private synchronized void registerObserver() {
+        if (observing) return;
+        observing = true;
+        MediaRepository.observe(context, this::scheduleUpdate);
+    }
+}
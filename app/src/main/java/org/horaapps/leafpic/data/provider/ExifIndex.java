@@ -0,0 +1,596 @@
+package org.horaapps.leafpic.data.provider;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.horaapps.leafpic.data.Media;
+import org.horaapps.leafpic.data.geo.Cluster;
+import org.horaapps.leafpic.data.geo.GeoGrid;
+import org.horaapps.leafpic.data.metadata.ExifHeader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Persistent index of the EXIF of the JPEGs of the MediaStore: date-original, camera make and
+ * model, GPS position, one row per _ID.
+ * <p>
+ * Each file is read once, only its APP1 segment (see {@link ExifHeader}), then again only if its
+ * DATE_MODIFIED changes. An update reads only the JPEGs past the last id or the last DATE_MODIFIED
+ * indexed, and walks the ids only when some indexed ones vanished, see {@link #merge(SQLiteDatabase)}.
+ * Updates run in the background on the first use and on every change of the MediaStore after it,
+ * the rows are written in batches of {@link #BATCH_SIZE}.
+ * <p>
+ * The date-originals are kept in memory, sorted by id, to correct the date of the media as they
+ * are loaded: see {@link #apply(Media)}.
+ * <p>
+ * The positions are indexed by the cell of the {@link GeoGrid} holding them, and the geotagged
+ * media are counted per cell at every other zoom up to {@link #MAX_CLUSTER_ZOOM}, kept up to
+ * date by each update with the rows it changes: the media in an area and the clusters at a zoom are a few ranges of cells away,
+ * see {@link #getIdsWithin(double, double, double, double)} and {@link #getClusters(int, double, double, double, double)}.
+ */
+public class ExifIndex extends SQLiteOpenHelper {
+
+    private static final int DATABASE_VERSION = 4;
+    private static final String DATABASE_NAME = "exif.db";
+    private static final String TABLE_EXIF = "exif";
+    private static final String TABLE_CELLS = "cells";
+
+    private static final String EXIF_ID = "id";
+    private static final String EXIF_MTIME = "mtime";
+    private static final String EXIF_DATE_ORIGINAL = "date_original";
+    private static final String EXIF_MAKE = "make";
+    private static final String EXIF_MODEL = "model";
+    private static final String EXIF_LATITUDE = "latitude";
+    private static final String EXIF_LONGITUDE = "longitude";
+    private static final String EXIF_CELL = "cell";
+
+    private static final String CELLS_ZOOM = "zoom";
+    private static final String CELLS_CELL = "cell";
+    private static final String CELLS_COUNT = "count";
+    private static final String CELLS_LATITUDE_SUM = "latitude_sum";
+    private static final String CELLS_LONGITUDE_SUM = "longitude_sum";
+
+    /**
+     * The clusters are counted at the even zooms up to this one, about 150 by 75 meters at the equator.
+     */
+    public static final int MAX_CLUSTER_ZOOM = 18;
+
+    private static final int BATCH_SIZE = 256;
+
+    private static final String[] PROJECTION = {
+            MediaStore.Files.FileColumns._ID,
+            MediaStore.Files.FileColumns.DATA,
+            MediaStore.Files.FileColumns.DATE_MODIFIED};
+
+    private static ExifIndex mInstance = null;
+
+    private final Context context;
+    private volatile boolean observing = false;
+    private final AtomicBoolean updatePending = new AtomicBoolean();
+
+    /**
+     * The date-originals by id, null until read from the table.
+     */
+    private volatile Dates dates = null;
+    private final Object datesLock = new Object();
+
+    private static class Dates {
+        final long[] ids;
+        final long[] dates;
+
+        Dates(long[] ids, long[] dates) {
+            this.ids = ids;
+            this.dates = dates;
+        }
+
+        long get(long id) {
+            int i = Arrays.binarySearch(ids, id);
+            return i >= 0 ? dates[i] : -1;
+        }
+    }
+
+    private ExifIndex(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context;
+        // NOTE: the dates are read while an update writes
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    public static synchronized ExifIndex getInstance(Context context) {
+        if (mInstance == null)
+            mInstance = new ExifIndex(context.getApplicationContext());
+        return mInstance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " +
+                TABLE_EXIF + "(" +
+                EXIF_ID + " INTEGER PRIMARY KEY," +
+                EXIF_MTIME + " INTEGER NOT NULL," +
+                EXIF_DATE_ORIGINAL + " INTEGER," +
+                EXIF_MAKE + " TEXT," +
+                EXIF_MODEL + " TEXT," +
+                EXIF_LATITUDE + " REAL," +
+                EXIF_LONGITUDE + " REAL," +
+                EXIF_CELL + " INTEGER)");
+        db.execSQL(String.format("CREATE INDEX %s_%s ON %s(%s)", TABLE_EXIF, EXIF_CELL, TABLE_EXIF, EXIF_CELL));
+
+        db.execSQL("CREATE TABLE " +
+                TABLE_CELLS + "(" +
+                CELLS_ZOOM + " INTEGER NOT NULL," +
+                CELLS_CELL + " INTEGER NOT NULL," +
+                CELLS_COUNT + " INTEGER NOT NULL," +
+                CELLS_LATITUDE_SUM + " REAL NOT NULL," +
+                CELLS_LONGITUDE_SUM + " REAL NOT NULL," +
+                "PRIMARY KEY(" + CELLS_ZOOM + ", " + CELLS_CELL + "))");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_EXIF);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_CELLS);
+        onCreate(db);
+    }
+
+    /**
+     * Replace the date of the media with the date-original of its EXIF, when indexed.
+     * The first call starts indexing in the background, the media loaded meanwhile keep their date.
+     *
+     * @return the same media if its date is right, otherwise a copy with the date-original
+     */
+    @NonNull
+    public Media apply(@NonNull Media media) {
+        Dates dates = this.dates;
+        if (dates == null) dates = loadDates();
+        long date = dates.get(media.getId());
+        return date != -1 && date != media.getDateModified() ? media.withDateTaken(date) : media;
+    }
+
+    /**
+     * NOTE: not synchronized on the index, an update can take long
+     */
+    private Dates loadDates() {
+        synchronized (datesLock) {
+            if (dates != null) return dates;
+            start();
+
+            Cursor cur = getReadableDatabase().query(TABLE_EXIF, new String[]{EXIF_ID, EXIF_DATE_ORIGINAL},
+                    EXIF_DATE_ORIGINAL + " is not null", null, null, null, EXIF_ID);
+            try {
+                long[] ids = new long[cur.getCount()], values = new long[cur.getCount()];
+                for (int i = 0; cur.moveToNext(); i++) {
+                    ids[i] = cur.getLong(0);
+                    values[i] = cur.getLong(1);
+                }
+                return dates = new Dates(ids, values);
+            } finally {
+                cur.close();
+            }
+        }
+    }
+
+    /**
+     * Index the JPEGs added or modified since the last call and forget the deleted ones,
+     * the first call indexes them all.
+     * NOTE: blocking, not on the main thread
+     */
+    public void update() {
+        registerObserver();
+        int changes;
+        synchronized (this) {
+            // the changes notified from now on need another update
+            updatePending.set(false);
+            SQLiteDatabase db = getWritableDatabase();
+            changes = merge(db);
+        }
+        if (changes > 0) {
+            synchronized (datesLock) {
+                dates = null;
+            }
+            // NOTE: the media cached before have the dates of the MediaStore
+            MediaRepository.invalidateAll();
+        }
+    }
+
+    /**
+     * Only the new and modified JPEGs are read: the ones after the last id indexed, or modified after
+     * the last DATE_MODIFIED indexed. The vanished ones are looked for only if the MediaStore has
+     * fewer JPEGs up to the last id indexed than the index has rows.
+     * NOTE: a file modified keeping an older DATE_MODIFIED is not read again
+     *
+     * @return the number of rows written or deleted
+     */
+    private int merge(SQLiteDatabase db) {
+        long maxId, maxMtime;
+        int indexedCount;
+        Cursor watermark = db.rawQuery(String.format("SELECT max(%s), max(%s), count(*) FROM %s",
+                EXIF_ID, EXIF_MTIME, TABLE_EXIF), null);
+        try {
+            watermark.moveToFirst();
+            maxId = watermark.getLong(0);
+            maxMtime = watermark.getLong(1);
+            indexedCount = watermark.getInt(2);
+        } finally {
+            watermark.close();
+        }
+
+        // NOTE: a first index is counted at once at the end, the next ones row by row
+        boolean recount = indexedCount == 0 || !isCounted(db);
+        CellCounts cells = recount ? null : new CellCounts(db);
+        int changes;
+        db.beginTransaction();
+        try {
+            changes = deleteVanished(db, maxId, indexedCount, cells);
+            changes += indexChanged(db, maxId, maxMtime, changes, cells);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            if (cells != null) cells.close();
+        }
+        if (recount) countCells(db);
+        return changes;
+    }
+
+    /**
+     * @return the number of rows deleted
+     */
+    private int deleteVanished(SQLiteDatabase db, long maxId, int indexedCount, @Nullable CellCounts cells) {
+        if (indexedCount == 0) return 0;
+        Cursor count = jpegQuery(new String[]{"count(*)"}, idsUpTo(maxId))
+                .getCursor(context.getContentResolver());
+        if (count == null) return 0;
+        try {
+            if (!count.moveToFirst() || count.getInt(0) >= indexedCount) return 0;
+        } finally {
+            count.close();
+        }
+
+        long[] indexedIds;
+        Cursor indexed = db.query(TABLE_EXIF, new String[]{EXIF_ID}, null, null, null, null, EXIF_ID);
+        try {
+            indexedIds = new long[indexed.getCount()];
+            for (int i = 0; indexed.moveToNext(); i++) indexedIds[i] = indexed.getLong(0);
+        } finally {
+            indexed.close();
+        }
+
+        Cursor cur = jpegQuery(new String[]{MediaStore.Files.FileColumns._ID}, idsUpTo(maxId))
+                .getCursor(context.getContentResolver());
+        if (cur == null) return 0;
+
+        SQLiteStatement delete = db.compileStatement(String.format("DELETE FROM %s WHERE %s=?", TABLE_EXIF, EXIF_ID));
+        int changes = 0, next = 0;
+        try {
+            // both sorted by id, the indexed ones missing from the MediaStore are gone
+            while (next < indexedIds.length) {
+                long id = cur.moveToNext() ? cur.getLong(0) : Long.MAX_VALUE;
+                for (; next < indexedIds.length && indexedIds[next] < id; next++) {
+                    if (cells != null) cells.remove(indexedIds[next]);
+                    delete(delete, indexedIds[next]);
+                    if (++changes % BATCH_SIZE == 0) commitBatch(db);
+                }
+                if (next < indexedIds.length && indexedIds[next] == id) next++;
+            }
+        } finally {
+            delete.close();
+            cur.close();
+        }
+        return changes;
+    }
+
+    /**
+     * @param changes the changes so far, to commit every {@link #BATCH_SIZE}
+     * @param cells   to count the positions written, null if counted afterwards
+     * @return the number of rows written
+     */
+    private int indexChanged(SQLiteDatabase db, long maxId, long maxMtime, int changes, @Nullable CellCounts cells) {
+        // NOTE: numbers, joined in the selection instead of binding an arg each
+        Cursor cur = jpegQuery(PROJECTION, String.format(Locale.US, "%s>%d or %s>%d",
+                MediaStore.Files.FileColumns._ID, maxId, MediaStore.Files.FileColumns.DATE_MODIFIED, maxMtime))
+                .getCursor(context.getContentResolver());
+        if (cur == null) return 0;
+
+        SQLiteStatement insert = db.compileStatement(String.format(
+                "INSERT OR REPLACE INTO %s(%s, %s, %s, %s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                TABLE_EXIF, EXIF_ID, EXIF_MTIME, EXIF_DATE_ORIGINAL, EXIF_MAKE, EXIF_MODEL, EXIF_LATITUDE, EXIF_LONGITUDE, EXIF_CELL));
+        int written = 0;
+        try {
+            while (cur.moveToNext()) {
+                long id = cur.getLong(0);
+                // a modified file, its old position is not counted any more
+                if (cells != null && id <= maxId) cells.remove(id);
+                ExifHeader exif = insert(insert, id, cur.getString(1), cur.getLong(2));
+                if (cells != null && exif != null && exif.hasLocation())
+                    cells.add(GeoGrid.cellOf(exif.latitude, exif.longitude), 1, exif.latitude, exif.longitude);
+                written++;
+                if (++changes % BATCH_SIZE == 0) commitBatch(db);
+            }
+        } finally {
+            insert.close();
+            cur.close();
+        }
+        return written;
+    }
+
+    /**
+     * @return the query of the JPEGs of the MediaStore matching the selection, sorted by id
+     */
+    private static Query jpegQuery(String[] projection, String selection) {
+        return new Query.Builder()
+                .uri(MediaStore.Files.getContentUri("external"))
+                .projection(projection)
+                .selection(String.format("%s=? and %s=? and (%s)",
+                        MediaStore.Files.FileColumns.MEDIA_TYPE,
+                        MediaStore.Files.FileColumns.MIME_TYPE,
+                        selection))
+                .args(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE, "image/jpeg")
+                .sort(MediaStore.Files.FileColumns._ID)
+                .ascending(true)
+                .build();
+    }
+
+    private static String idsUpTo(long maxId) {
+        return String.format(Locale.US, "%s<=%d", MediaStore.Files.FileColumns._ID, maxId);
+    }
+
+    /**
+     * @return the EXIF written, null if it could not be read
+     */
+    @Nullable
+    private static ExifHeader insert(SQLiteStatement insert, long id, @Nullable String path, long mtime) {
+        ExifHeader exif = null;
+        try {
+            if (path != null) exif = ExifHeader.read(new File(path));
+        } catch (IOException ignored) {
+            // NOTE: the row is written anyway, the file is read again once modified
+        }
+
+        insert.clearBindings();
+        insert.bindLong(1, id);
+        insert.bindLong(2, mtime);
+        if (exif != null) {
+            if (exif.dateOriginal != -1) insert.bindLong(3, exif.dateOriginal);
+            if (exif.make != null) insert.bindString(4, exif.make);
+            if (exif.model != null) insert.bindString(5, exif.model);
+            if (exif.hasLocation()) {
+                insert.bindDouble(6, exif.latitude);
+                insert.bindDouble(7, exif.longitude);
+                insert.bindLong(8, GeoGrid.cellOf(exif.latitude, exif.longitude));
+            }
+        }
+        insert.executeInsert();
+        return exif;
+    }
+
+    private static void delete(SQLiteStatement delete, long id) {
+        delete.bindLong(1, id);
+        delete.executeUpdateDelete();
+    }
+
+    /**
+     * Commit the changes so far and go on in a new transaction: a first index of the library is not a single one.
+     */
+    private static void commitBatch(SQLiteDatabase db) {
+        db.setTransactionSuccessful();
+        db.endTransaction();
+        db.beginTransaction();
+    }
+
+    /**
+     * @return false if the geotagged media are not counted, e.g. a first index interrupted before counting them
+     */
+    private static boolean isCounted(SQLiteDatabase db) {
+        return DatabaseUtils.queryNumEntries(db, TABLE_CELLS) > 0
+                || DatabaseUtils.queryNumEntries(db, TABLE_EXIF, EXIF_CELL + " is not null") == 0;
+    }
+
+    /**
+     * Count the geotagged media of each cell, from scratch: a GROUP BY on the cell index for each zoom.
+     * NOTE: only after a first index, the next updates count the rows they change, see {@link CellCounts}
+     */
+    private static void countCells(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_CELLS, null, null);
+            for (int zoom = 0; zoom <= MAX_CLUSTER_ZOOM; zoom += 2)
+                db.execSQL(String.format(Locale.US,
+                        "INSERT INTO %s(%s, %s, %s, %s, %s) SELECT %d, %s >> %d, count(*), sum(%s), sum(%s) FROM %s WHERE %s is not null GROUP BY 2",
+                        TABLE_CELLS, CELLS_ZOOM, CELLS_CELL, CELLS_COUNT, CELLS_LATITUDE_SUM, CELLS_LONGITUDE_SUM,
+                        zoom, EXIF_CELL, 2 * (GeoGrid.MAX_ZOOM - zoom), EXIF_LATITUDE, EXIF_LONGITUDE, TABLE_EXIF, EXIF_CELL));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Add or remove media to the counts of the cells holding them, at every zoom counted.
+     * NOTE: within the transaction of the update, the cells left empty are deleted
+     */
+    private static final class CellCounts {
+        private final SQLiteDatabase db;
+        private final SQLiteStatement insert, update, prune;
+
+        CellCounts(SQLiteDatabase db) {
+            this.db = db;
+            insert = db.compileStatement(String.format(
+                    "INSERT OR IGNORE INTO %s(%s, %s, %s, %s, %s) VALUES (?, ?, 0, 0, 0)",
+                    TABLE_CELLS, CELLS_ZOOM, CELLS_CELL, CELLS_COUNT, CELLS_LATITUDE_SUM, CELLS_LONGITUDE_SUM));
+            update = db.compileStatement(String.format(
+                    "UPDATE %s SET %s=%s+?, %s=%s+?, %s=%s+? WHERE %s=? AND %s=?",
+                    TABLE_CELLS, CELLS_COUNT, CELLS_COUNT, CELLS_LATITUDE_SUM, CELLS_LATITUDE_SUM,
+                    CELLS_LONGITUDE_SUM, CELLS_LONGITUDE_SUM, CELLS_ZOOM, CELLS_CELL));
+            prune = db.compileStatement(String.format("DELETE FROM %s WHERE %s=? AND %s=? AND %s<=0",
+                    TABLE_CELLS, CELLS_ZOOM, CELLS_CELL, CELLS_COUNT));
+        }
+
+        /**
+         * @param cell  at {@link GeoGrid#MAX_ZOOM}
+         * @param count 1 to add a media, -1 to remove it
+         */
+        void add(long cell, int count, double latitude, double longitude) {
+            for (int zoom = 0; zoom <= MAX_CLUSTER_ZOOM; zoom += 2) {
+                long parent = GeoGrid.parentOf(cell, zoom);
+                if (count > 0) {
+                    insert.bindLong(1, zoom);
+                    insert.bindLong(2, parent);
+                    insert.executeInsert();
+                }
+                update.bindLong(1, count);
+                update.bindDouble(2, count * latitude);
+                update.bindDouble(3, count * longitude);
+                update.bindLong(4, zoom);
+                update.bindLong(5, parent);
+                update.executeUpdateDelete();
+                if (count < 0) {
+                    prune.bindLong(1, zoom);
+                    prune.bindLong(2, parent);
+                    prune.executeUpdateDelete();
+                }
+            }
+        }
+
+        /**
+         * Uncount the indexed position of the media, if any.
+         */
+        void remove(long id) {
+            Cursor cur = db.query(TABLE_EXIF, new String[]{EXIF_CELL, EXIF_LATITUDE, EXIF_LONGITUDE},
+                    String.format(Locale.US, "%s=%d and %s is not null", EXIF_ID, id, EXIF_CELL),
+                    null, null, null, null);
+            try {
+                if (cur.moveToFirst()) add(cur.getLong(0), -1, cur.getDouble(1), cur.getDouble(2));
+            } finally {
+                cur.close();
+            }
+        }
+
+        void close() {
+            insert.close();
+            update.close();
+            prune.close();
+        }
+    }
+
+    /**
+     * @param west greater than east for an area across the antimeridian
+     * @return the ids of the JPEGs taken in the area
+     */
+    @NonNull
+    public long[] getIdsWithin(double south, double west, double north, double east) {
+        start();
+        String longitude = west <= east
+                ? String.format(Locale.US, "%s between %s and %s", EXIF_LONGITUDE, west, east)
+                : String.format(Locale.US, "(%s >= %s or %s <= %s)", EXIF_LONGITUDE, west, EXIF_LONGITUDE, east);
+        // NOTE: the cells select the rows through the index, the bounds drop the ones just outside
+        String selection = String.format(Locale.US, "%s and %s between %s and %s and %s",
+                rangesSelection(EXIF_CELL, GeoGrid.cover(south, west, north, east), 0),
+                EXIF_LATITUDE, south, north, longitude);
+
+        Cursor cur = getReadableDatabase().query(TABLE_EXIF, new String[]{EXIF_ID}, selection, null, null, null, null);
+        try {
+            long[] ids = new long[cur.getCount()];
+            for (int i = 0; cur.moveToNext(); i++) ids[i] = cur.getLong(0);
+            return ids;
+        } finally {
+            cur.close();
+        }
+    }
+
+    /**
+     * The geotagged media of the area grouped by the cells of the zoom, from the counts per cell.
+     * NOTE: the cells touching the area are all included, beyond {@link #MAX_CLUSTER_ZOOM} its clusters are returned
+     *
+     * @param zoom of the {@link GeoGrid}
+     * @param west greater than east for an area across the antimeridian
+     * @return the clusters sorted by cell
+     */
+    @NonNull
+    public List<Cluster> getClusters(int zoom, double south, double west, double north, double east) {
+        start();
+        zoom = Math.max(0, Math.min(zoom, MAX_CLUSTER_ZOOM));
+        // the odd zooms are summed up from the next even one
+        int level = zoom + (zoom & 1);
+        int shift = 2 * (level - zoom);
+
+        String selection = String.format(Locale.US, "%s=%d and %s", CELLS_ZOOM, level,
+                rangesSelection(CELLS_CELL, GeoGrid.cover(south, west, north, east), 2 * (GeoGrid.MAX_ZOOM - level)));
+        Cursor cur = getReadableDatabase().query(TABLE_CELLS,
+                new String[]{CELLS_CELL, CELLS_COUNT, CELLS_LATITUDE_SUM, CELLS_LONGITUDE_SUM},
+                selection, null, null, null, CELLS_CELL);
+        try {
+            ArrayList<Cluster> clusters = new ArrayList<>(cur.getCount());
+            long cell = -1;
+            int count = 0;
+            double latitudeSum = 0, longitudeSum = 0;
+            // NOTE: sorted by cell, the cells of a parent are next to each other
+            while (cur.moveToNext()) {
+                long parent = cur.getLong(0) >>> shift;
+                if (parent != cell && count > 0) {
+                    clusters.add(new Cluster(cell, zoom, count, latitudeSum / count, longitudeSum / count));
+                    count = 0;
+                    latitudeSum = longitudeSum = 0;
+                }
+                cell = parent;
+                count += cur.getInt(1);
+                latitudeSum += cur.getDouble(2);
+                longitudeSum += cur.getDouble(3);
+            }
+            if (count > 0) clusters.add(new Cluster(cell, zoom, count, latitudeSum / count, longitudeSum / count));
+            return clusters;
+        } finally {
+            cur.close();
+        }
+    }
+
+    /**
+     * @param ranges [first, last] pairs of cells at {@link GeoGrid#MAX_ZOOM}
+     * @param shift  to the zoom of the column
+     */
+    private static String rangesSelection(String column, long[] ranges, int shift) {
+        // NOTE: codes are numbers, they are joined in the selection instead of binding an arg each
+        StringBuilder selection = new StringBuilder("(");
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (i > 0) selection.append(" or ");
+            selection.append(String.format(Locale.US, "%s between %d and %d", column, ranges[i] >>> shift, ranges[i + 1] >>> shift));
+        }
+        return selection.append(")").toString();
+    }
+
+    /**
+     * Index the JPEGs of the MediaStore in the background, once.
+     */
+    private void start() {
+        if (!observing) scheduleUpdate();
+    }
+
+    private void scheduleUpdate() {
+        if (updatePending.compareAndSet(false, true))
+            Schedulers.io().scheduleDirect(this::update);
+    }
+
+    /**
+     * Catch up on every change of the MediaStore, from the first update on.
+     * NOTE: a burst of changes schedules a single update
+     */
+    private synchronized void registerObserver() {
+        if (observing) return;
+        observing = true;
+        MediaRepository.observe(context, this::scheduleUpdate);
+    }
+}
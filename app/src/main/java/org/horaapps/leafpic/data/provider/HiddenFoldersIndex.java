@@ -0,0 +1,269 @@
+package org.horaapps.leafpic.data.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import org.horaapps.leafpic.data.filter.ImageFileFilter;
+import org.horaapps.leafpic.util.FileStat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Persistent per-directory snapshot used while looking for hidden albums.
+ * <p>
+ * Every directory visited by the hidden albums walk is stored along with its mtime,
+ * the names of its sub directories, whether it contains a .nomedia file, how many media
+ * files it holds and which one is the newest. A directory mtime changes only when entries
+ * are added, removed or renamed, so as long as it is unchanged the cached record is reused
+ * and the directory is not listed again.
+ */
+public class HiddenFoldersIndex extends SQLiteOpenHelper {
+
+    private static final int DATABASE_VERSION = 1;
+    private static final String DATABASE_NAME = "hidden_folders.db";
+    private static final String TABLE_DIRS = "dirs";
+
+    private static final String DIR_PATH = "path";
+    private static final String DIR_MTIME = "mtime";
+    private static final String DIR_CHILDREN = "children";
+    private static final String DIR_NOMEDIA = "nomedia";
+    private static final String DIR_IMAGES = "images";
+    private static final String DIR_VIDEOS = "videos";
+    private static final String DIR_NEWEST = "newest";
+    private static final String DIR_NEWEST_DATE = "newest_date";
+    private static final String DIR_NEWEST_IMAGE = "newest_image";
+    private static final String DIR_NEWEST_IMAGE_DATE = "newest_image_date";
+
+    private static final String CHILDREN_SEPARATOR = "/";
+
+    private static HiddenFoldersIndex mInstance = null;
+
+    private HashMap<String, Entry> entries = null;
+    private final HashSet<String> dirty = new HashSet<>();
+    private final HashSet<String> removed = new HashSet<>();
+
+    /**
+     * Cached state of a single directory.
+     */
+    static class Entry {
+        String path;
+        long mtime;
+        String[] children;
+        boolean nomedia;
+        int images, videos;
+        String newest, newestImage;
+        long newestDate = Long.MIN_VALUE, newestImageDate = Long.MIN_VALUE;
+
+        int getCount(boolean includeVideo) {
+            return includeVideo ? images + videos : images;
+        }
+
+        @Nullable
+        String getNewest(boolean includeVideo) {
+            return includeVideo ? newest : newestImage;
+        }
+
+        long getNewestDate(boolean includeVideo) {
+            return includeVideo ? newestDate : newestImageDate;
+        }
+    }
+
+    private HiddenFoldersIndex(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    public static HiddenFoldersIndex getInstance(Context context) {
+        if (mInstance == null)
+            mInstance = new HiddenFoldersIndex(context.getApplicationContext());
+        return mInstance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " +
+                TABLE_DIRS + "(" +
+                DIR_PATH + " TEXT PRIMARY KEY," +
+                DIR_MTIME + " INTEGER," +
+                DIR_CHILDREN + " TEXT," +
+                DIR_NOMEDIA + " INTEGER," +
+                DIR_IMAGES + " INTEGER," +
+                DIR_VIDEOS + " INTEGER," +
+                DIR_NEWEST + " TEXT," +
+                DIR_NEWEST_DATE + " INTEGER," +
+                DIR_NEWEST_IMAGE + " TEXT," +
+                DIR_NEWEST_IMAGE_DATE + " INTEGER)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // NOTE: it is only a cache, it can be rebuilt at any time
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_DIRS);
+        onCreate(db);
+    }
+
+    /**
+     * Load the whole snapshot in memory, it is done once per process.
+     */
+    synchronized void open() {
+        if (entries != null) return;
+
+        entries = new HashMap<>();
+        SQLiteDatabase db = getReadableDatabase();
+        Cursor cur = db.query(TABLE_DIRS, null, null, null, null, null, null);
+        try {
+            int iPath = cur.getColumnIndex(DIR_PATH);
+            int iMtime = cur.getColumnIndex(DIR_MTIME);
+            int iChildren = cur.getColumnIndex(DIR_CHILDREN);
+            int iNomedia = cur.getColumnIndex(DIR_NOMEDIA);
+            int iImages = cur.getColumnIndex(DIR_IMAGES);
+            int iVideos = cur.getColumnIndex(DIR_VIDEOS);
+            int iNewest = cur.getColumnIndex(DIR_NEWEST);
+            int iNewestDate = cur.getColumnIndex(DIR_NEWEST_DATE);
+            int iNewestImage = cur.getColumnIndex(DIR_NEWEST_IMAGE);
+            int iNewestImageDate = cur.getColumnIndex(DIR_NEWEST_IMAGE_DATE);
+
+            while (cur.moveToNext()) {
+                Entry entry = new Entry();
+                entry.path = cur.getString(iPath);
+                entry.mtime = cur.getLong(iMtime);
+                String children = cur.getString(iChildren);
+                entry.children = TextUtils.isEmpty(children)
+                        ? new String[0] : children.split(CHILDREN_SEPARATOR);
+                entry.nomedia = cur.getInt(iNomedia) == 1;
+                entry.images = cur.getInt(iImages);
+                entry.videos = cur.getInt(iVideos);
+                entry.newest = cur.getString(iNewest);
+                entry.newestDate = cur.getLong(iNewestDate);
+                entry.newestImage = cur.getString(iNewestImage);
+                entry.newestImageDate = cur.getLong(iNewestImageDate);
+                entries.put(entry.path, entry);
+            }
+        } finally {
+            cur.close();
+            db.close();
+        }
+    }
+
+    /**
+     * Get the state of a directory, listing it only if its mtime differs from the cached one.
+     *
+     * @return null if the directory does not exist anymore
+     */
+    @Nullable
+    synchronized Entry get(@NonNull File dir) {
+        String path = dir.getPath();
+        long mtime = dir.lastModified();
+
+        if (mtime == 0) {
+            // the directory is gone (or not readable)
+            if (entries.remove(path) != null) {
+                dirty.remove(path);
+                removed.add(path);
+            }
+            return null;
+        }
+
+        Entry entry = entries.get(path);
+        if (entry != null && entry.mtime == mtime)
+            return entry;
+
+        entry = scan(dir, mtime);
+        if (entry == null) return null;
+
+        entries.put(path, entry);
+        dirty.add(path);
+        removed.remove(path);
+        return entry;
+    }
+
+    @Nullable
+    private static Entry scan(File dir, long mtime) {
+        File[] files = dir.listFiles();
+        if (files == null) return null;
+
+        Entry entry = new Entry();
+        entry.path = dir.getPath();
+        entry.mtime = mtime;
+
+        ArrayList<String> children = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+
+            if (name.equals(".nomedia")) {
+                entry.nomedia = true;
+                continue;
+            }
+
+            if (ImageFileFilter.isMedia(name, true)) {
+                FileStat stat = FileStat.of(file);
+                if (stat == null || !stat.isRegularFile()) continue;
+                long lastModified = stat.lastModified();
+
+                boolean image = ImageFileFilter.isMedia(name, false);
+                if (image) entry.images++;
+                else entry.videos++;
+
+                if (lastModified > entry.newestDate) {
+                    entry.newestDate = lastModified;
+                    entry.newest = file.getPath();
+                }
+                if (image && lastModified > entry.newestImageDate) {
+                    entry.newestImageDate = lastModified;
+                    entry.newestImage = file.getPath();
+                }
+            } else if (file.isDirectory()) {
+                children.add(name);
+            }
+        }
+
+        entry.children = children.toArray(new String[children.size()]);
+        return entry;
+    }
+
+    /**
+     * Persist the records that changed since the last call.
+     */
+    synchronized void save() {
+        if (entries == null || (dirty.isEmpty() && removed.isEmpty())) return;
+
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (String path : removed)
+                db.delete(TABLE_DIRS, DIR_PATH + "=?", new String[]{ path });
+
+            for (String path : dirty) {
+                Entry entry = entries.get(path);
+                if (entry == null) continue;
+
+                ContentValues values = new ContentValues();
+                values.put(DIR_PATH, entry.path);
+                values.put(DIR_MTIME, entry.mtime);
+                values.put(DIR_CHILDREN, TextUtils.join(CHILDREN_SEPARATOR, entry.children));
+                values.put(DIR_NOMEDIA, entry.nomedia ? 1 : 0);
+                values.put(DIR_IMAGES, entry.images);
+                values.put(DIR_VIDEOS, entry.videos);
+                values.put(DIR_NEWEST, entry.newest);
+                values.put(DIR_NEWEST_DATE, entry.newestDate);
+                values.put(DIR_NEWEST_IMAGE, entry.newestImage);
+                values.put(DIR_NEWEST_IMAGE_DATE, entry.newestImageDate);
+                db.insertWithOnConflict(TABLE_DIRS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+            dirty.clear();
+            removed.clear();
+        } finally {
+            db.endTransaction();
+            db.close();
+        }
+    }
+}
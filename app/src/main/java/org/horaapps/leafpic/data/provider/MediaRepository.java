@@ -0,0 +1,249 @@
+package org.horaapps.leafpic.data.provider;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import org.horaapps.leafpic.data.Album;
+import org.horaapps.leafpic.data.Media;
+import org.horaapps.leafpic.data.filter.FilterMode;
+import org.horaapps.leafpic.util.preferences.Prefs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+
+/**
+ * In-memory cache of the media of the albums opened recently.
+ * <p>
+ * Going back and forth between albums, or from the grid to the timeline of the same album,
+ * used to query the MediaStore for the same rows every time. The lists loaded through
+ * {@link #getMedia(Context, Album, FilterMode)} are kept in an LRU bounded by their estimated
+ * size in bytes, so an album opened again is served from memory.
+ * <p>
+ * A change notified by the MediaStore drops the albums of the media changed, or the whole cache
+ * when it does not tell which media. The operations of MediaHelper drop the folders they touch
+ * right away, their notifications arrive asynchronously.
+ * <p>
+ * The cache keeps its own copies of the media and hands out copies, the adapters and the legacy
+ * operations can change theirs.
+ */
+public final class MediaRepository {
+
+    /**
+     * Rough size of a Media and of its slot in the list, the strings are counted apart.
+     */
+    private static final int MEDIA_BYTES = 96;
+
+    private static final LruCache<Key, Entry> cache = new LruCache<Key, Entry>(getMaxBytes()) {
+        @Override
+        protected int sizeOf(Key key, Entry entry) {
+            return entry.bytes;
+        }
+    };
+
+    /**
+     * Bumped by every invalidation: a load that started before it must not be cached.
+     */
+    private static final AtomicInteger generation = new AtomicInteger();
+
+    private static ContentObserver observer = null;
+
+    /**
+     * Told of every change of the MediaStore after the cache is dropped, see {@link #observe(Context, Runnable)}.
+     */
+    private static final CopyOnWriteArrayList<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    private MediaRepository() {
+    }
+
+    private static class Key {
+        final long albumId;
+        final FilterMode filterMode;
+        final boolean showVideos;
+        // NOTE: the columns loaded depend on the sorting, see CPHelper#getGridProfile
+        final Query.Profile profile;
+
+        Key(long albumId, FilterMode filterMode, boolean showVideos, Query.Profile profile) {
+            this.albumId = albumId;
+            this.filterMode = filterMode;
+            this.showVideos = showVideos;
+            this.profile = profile;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return albumId == other.albumId && filterMode == other.filterMode && showVideos == other.showVideos
+                    && profile == other.profile;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 31 * (31 * (int) (albumId ^ (albumId >>> 32)) + filterMode.hashCode()) + (showVideos ? 1 : 0);
+            return 31 * hash + profile.hashCode();
+        }
+    }
+
+    private static class Entry {
+        final String path;
+        final List<Media> media;
+        final int bytes;
+
+        Entry(@Nullable String path, @NonNull ArrayList<Media> media) {
+            this.path = path;
+            this.media = Collections.unmodifiableList(media);
+            int bytes = 0;
+            for (Media m : media) bytes += MEDIA_BYTES + 2 * (length(m.getPath()) + length(m.getMimeType()));
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return true if the media of the id is in the list, e.g. the album it was in before a change
+         */
+        boolean contains(long id) {
+            for (Media m : media) if (m.getId() == id) return true;
+            return false;
+        }
+
+        /**
+         * NOTE: the MediaStore can have a NULL MIME_TYPE, and media from an uri have no path
+         */
+        private static int length(@Nullable String s) {
+            return s != null ? s.length() : 0;
+        }
+    }
+
+    private static int getMaxBytes() {
+        return (int) Math.min(Runtime.getRuntime().maxMemory() / 16, 16 * 1024 * 1024);
+    }
+
+    /**
+     * Same of {@link CPHelper#getMedia(Context, Album, FilterMode)}, served from memory if the
+     * album was loaded recently. The media come in the order of the first load.
+     */
+    public static Observable<Media> getMedia(Context context, Album album, FilterMode filterMode) {
+        // NOTE: folders out of the MediaStore are listed directly, nothing would notify their changes
+        if (album.getId() == -1) return CPHelper.getMedia(context, album, filterMode);
+
+        if (filterMode == null) filterMode = FilterMode.ALL;
+        FilterMode mode = filterMode;
+        Context appContext = context.getApplicationContext();
+
+        return Observable.defer(() -> {
+            registerObserver(appContext);
+            Key key = new Key(album.getId(), mode, Prefs.showVideos(), CPHelper.getGridProfile(album.settings.getSortingMode()));
+            Entry entry = cache.get(key);
+            if (entry != null) return Observable.fromIterable(entry.media).map(Media::new);
+
+            int loadGeneration = generation.get();
+            ArrayList<Media> loaded = new ArrayList<>();
+            return CPHelper.getMedia(appContext, album, mode)
+                    .doOnNext(m -> loaded.add(new Media(m)))
+                    .doOnComplete(() -> {
+                        if (loadGeneration == generation.get())
+                            cache.put(key, new Entry(album.getPath(), loaded));
+                    });
+        });
+    }
+
+    /**
+     * Run the listener on every change of the MediaStore, on the thread of the notification: the
+     * persistent indexes catch up through the same observer that drops the cache.
+     */
+    public static void observe(@NonNull Context context, @NonNull Runnable listener) {
+        listeners.add(listener);
+        registerObserver(context.getApplicationContext());
+    }
+
+    private static synchronized void registerObserver(Context appContext) {
+        if (observer != null) return;
+        observer = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                invalidateChanged(appContext, uri);
+                for (Runnable listener : listeners) listener.run();
+            }
+        };
+        // NOTE: the MediaStore notifies the uri of the table that changed, not a common parent
+        for (Uri uri : new Uri[]{MediaStore.Files.getContentUri("external"),
+                MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                MediaStore.Video.Media.EXTERNAL_CONTENT_URI})
+            appContext.getContentResolver().registerContentObserver(uri, true, observer);
+    }
+
+    /**
+     * Drop the albums holding the media of the uri, before or after the change, including "All Media".
+     * NOTE: the uri of a table, or of a batch of changes, has no id: everything is dropped
+     */
+    private static void invalidateChanged(Context appContext, @Nullable Uri uri) {
+        long id = -1;
+        try {
+            if (uri != null) id = ContentUris.parseId(uri);
+        } catch (NumberFormatException | UnsupportedOperationException ignored) {
+        }
+        if (id == -1) {
+            invalidateAll();
+            return;
+        }
+
+        // the album it is in now, none if deleted
+        long parent = -1;
+        Cursor cur = appContext.getContentResolver().query(MediaStore.Files.getContentUri("external"),
+                new String[]{MediaStore.Files.FileColumns.PARENT},
+                String.format(Locale.US, "%s=%d", MediaStore.Files.FileColumns._ID, id), null, null);
+        if (cur != null) {
+            try {
+                if (cur.moveToFirst()) parent = cur.getLong(0);
+            } finally {
+                cur.close();
+            }
+        }
+
+        generation.incrementAndGet();
+        for (Map.Entry<Key, Entry> entry : cache.snapshot().entrySet()) {
+            long albumId = entry.getKey().albumId;
+            if (albumId == Album.ALL_MEDIA_ALBUM_ID || albumId == parent || entry.getValue().contains(id))
+                cache.remove(entry.getKey());
+        }
+    }
+
+    public static void invalidateAll() {
+        generation.incrementAndGet();
+        cache.evictAll();
+    }
+
+    /**
+     * Drop the media of an album, e.g. before a refresh asked by the user.
+     */
+    public static void invalidate(@NonNull Album album) {
+        generation.incrementAndGet();
+        for (Key key : cache.snapshot().keySet())
+            if (key.albumId == album.getId()) cache.remove(key);
+    }
+
+    /**
+     * Drop the albums showing the media of a folder, including "All Media".
+     */
+    public static void invalidateFolder(@Nullable String folderPath) {
+        generation.incrementAndGet();
+        for (Map.Entry<Key, Entry> entry : cache.snapshot().entrySet()) {
+            if (entry.getKey().albumId == Album.ALL_MEDIA_ALBUM_ID
+                    || folderPath == null || folderPath.equals(entry.getValue().path))
+                cache.remove(entry.getKey());
+        }
+    }
+}
@@ -4,11 +4,81 @@ import android.content.ContentResolver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
+import android.provider.MediaStore;
 
 import java.util.Arrays;
 
 public class Query {
 
+    /**
+     * The columns each screen needs, so that cursor windows and Binder transactions carry nothing else.
+     * <p>
+     * The media profiles are read by {@link org.horaapps.leafpic.data.Media#reader(Profile)},
+     * with the positions of their own columns.
+     * NOTE: the viewer and the details get the media of the grid, they have no profile of their own
+     */
+    public enum Profile {
+        /**
+         * Thumbnails in the grid and in the timeline.
+         * NOTE: DATA is read by the grid as well, the thumbnails are loaded, labeled, sorted by name
+         * and handled by path
+         */
+        GRID(MediaStore.Files.FileColumns._ID,
+                MediaStore.Files.FileColumns.DATA,
+                MediaStore.Images.Media.DATE_TAKEN,
+                MediaStore.Files.FileColumns.MIME_TYPE,
+                MediaStore.Images.Media.ORIENTATION),
+
+        /**
+         * The grid of an album sorted by size, the only one reading SIZE.
+         */
+        GRID_BY_SIZE(MediaStore.Files.FileColumns._ID,
+                MediaStore.Files.FileColumns.DATA,
+                MediaStore.Images.Media.DATE_TAKEN,
+                MediaStore.Files.FileColumns.MIME_TYPE,
+                MediaStore.Images.Media.ORIENTATION,
+                MediaStore.Files.FileColumns.SIZE),
+
+        /**
+         * A row per folder with its aggregates, all computed in the same pass of the GROUP BY.
+         * <p>
+         * NOTE: with more than a min() or max() SQLite takes the bare columns from any of the
+         * matching rows, so the cover is packed in a single max() instead: the zero padded
+         * DATE_MODIFIED and _ID followed by the DATA of the newest media, see {@link #COVER_ID_OFFSET}.
+         * The bare DATA is only used for the folder, which is the same for every row.
+         */
+        ALBUM(MediaStore.Files.FileColumns.PARENT,
+                MediaStore.Images.Media.BUCKET_DISPLAY_NAME,
+                "count(*)",
+                MediaStore.Files.FileColumns.DATA,
+                "max(" + MediaStore.Files.FileColumns.DATE_MODIFIED + ")",
+                String.format("max(printf('%%020d%%020d', %s, %s) || %s)",
+                        MediaStore.Files.FileColumns.DATE_MODIFIED,
+                        MediaStore.Files.FileColumns._ID,
+                        MediaStore.Files.FileColumns.DATA),
+                "sum(" + MediaStore.Files.FileColumns.SIZE + ")",
+                "min(" + MediaStore.Images.Media.DATE_TAKEN + ")",
+                "max(" + MediaStore.Images.Media.DATE_TAKEN + ")",
+                String.format("sum(%s=%d)", MediaStore.Files.FileColumns.MEDIA_TYPE, MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE),
+                String.format("sum(%s=%d)", MediaStore.Files.FileColumns.MEDIA_TYPE, MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO),
+                String.format("sum(%s='image/gif')", MediaStore.Files.FileColumns.MIME_TYPE));
+
+        /**
+         * Offsets of the _ID and of the DATA of the cover in the packed column of {@link #ALBUM}.
+         */
+        public static final int COVER_ID_OFFSET = 20, COVER_PATH_OFFSET = 40;
+
+        private final String[] projection;
+
+        Profile(String... projection) {
+            this.projection = projection;
+        }
+
+        public String[] getProjection() {
+            return projection.clone();
+        }
+    }
+
     public Uri uri;
     public String[] projection;
     public String selection;
@@ -76,6 +146,11 @@ public class Query {
             return this;
         }
 
+        public Builder profile(Profile val) {
+            projection = val.projection;
+            return this;
+        }
+
         public Builder selection(String val) {
             selection = val;
             return this;
@@ -86,6 +161,31 @@ public class Query {
             return this;
         }
 
+        /**
+         * Restrict the rows to the ones with the column in [from, to], on top of the selection and
+         * the args already set.
+         */
+        public Builder between(String column, Object from, Object to) {
+            return between(column, from, to, false);
+        }
+
+        /**
+         * @param includeNull keep the rows without a value in the column as well
+         */
+        public Builder between(String column, Object from, Object to, boolean includeNull) {
+            // NOTE: args are bound as text, compared to the bare column they take its affinity
+            String range = includeNull
+                    ? String.format("(%s BETWEEN ? AND ? or %s is null)", column, column)
+                    : String.format("%s BETWEEN ? AND ?", column);
+            selection = selection == null ? range : String.format("(%s) and %s", selection, range);
+
+            Object[] all = args == null ? new Object[2] : Arrays.copyOf(args, args.length + 2);
+            all[all.length - 2] = from;
+            all[all.length - 1] = to;
+            args = all;
+            return this;
+        }
+
         public Builder sort(String val) {
             sort = val;
             return this;
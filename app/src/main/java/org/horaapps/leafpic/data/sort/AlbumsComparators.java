@@ -74,7 +74,7 @@ public class AlbumsComparators {
         return (a1, a2) -> {
             int res = base.compare(a1, a2);
             if (res == 0)
-                return a1.getCount() - a2.getCount();
+                return Long.compare(a1.getSizeKey(), a2.getSizeKey());
             return res;
         };
     }
@@ -0,0 +1,188 @@
+package org.horaapps.leafpic.data.sort;
+
+import android.support.annotation.NonNull;
+
+import org.horaapps.leafpic.data.Media;
+import org.horaapps.leafpic.util.NumericComparator;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sorts a fixed snapshot of media through an int[] permutation instead of moving objects around.
+ * <p>
+ * The sort key of each mode is extracted once (primitive longs for dates and sizes, strings
+ * for the others) and compared by index, so no Long is unboxed and no getter is called while
+ * sorting. The permutation of every mode and order is cached: going back to one already
+ * used is a single O(n) pass over the list.
+ * NOTE: the descending one is sorted on its own, reversing the ascending one would reverse the ties
+ * <p>
+ * The snapshot must be dropped as soon as the list it was built from changes.
+ */
+public class MediaSorter {
+
+    /**
+     * Below this size splitting the work among threads costs more than it saves.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    private static ForkJoinPool pool = null;
+
+    private final Media[] media;
+    private final EnumMap<SortingMode, int[]> ascending = new EnumMap<>(SortingMode.class);
+    private final EnumMap<SortingMode, int[]> descending = new EnumMap<>(SortingMode.class);
+
+    private interface IndexComparator {
+        int compare(int i, int j);
+    }
+
+    public MediaSorter(@NonNull List<Media> media) {
+        this.media = media.toArray(new Media[media.size()]);
+    }
+
+    public int size() {
+        return media.length;
+    }
+
+    /**
+     * @return the indexes of the snapshot sorted for the given mode and order, do not modify it
+     */
+    @NonNull
+    public synchronized int[] getPermutation(@NonNull SortingMode sortingMode, @NonNull SortingOrder sortingOrder) {
+        EnumMap<SortingMode, int[]> permutations = sortingOrder.isAscending() ? ascending : descending;
+        int[] permutation = permutations.get(sortingMode);
+        if (permutation == null) {
+            IndexComparator comparator = getIndexComparator(sortingMode);
+            permutation = sort(sortingOrder.isAscending() ? comparator : (i, j) -> comparator.compare(j, i));
+            permutations.put(sortingMode, permutation);
+        }
+        return permutation;
+    }
+
+    /**
+     * Rewrite the list in place following the permutation of a mode.
+     *
+     * @param list a list holding the same media of the snapshot
+     */
+    public void apply(@NonNull SortingMode sortingMode, @NonNull SortingOrder sortingOrder, @NonNull List<Media> list) {
+        if (list.size() != media.length)
+            throw new IllegalStateException("The list changed since the snapshot was taken");
+
+        int[] permutation = getPermutation(sortingMode, sortingOrder);
+        for (int i = 0; i < media.length; i++) list.set(i, media[permutation[i]]);
+    }
+
+    private IndexComparator getIndexComparator(SortingMode sortingMode) {
+        int n = media.length;
+        switch (sortingMode) {
+            case DATE: default: {
+                long[] keys = new long[n];
+                for (int i = 0; i < n; i++) keys[i] = media[i].getDateModified();
+                return (i, j) -> Long.compare(keys[i], keys[j]);
+            }
+            case SIZE: {
+                long[] keys = new long[n];
+                for (int i = 0; i < n; i++) keys[i] = media[i].getSize();
+                return (i, j) -> Long.compare(keys[i], keys[j]);
+            }
+            case NAME: {
+                String[] keys = new String[n];
+                for (int i = 0; i < n; i++) keys[i] = media[i].getPath();
+                return (i, j) -> keys[i].compareTo(keys[j]);
+            }
+            case TYPE: {
+                String[] keys = new String[n];
+                for (int i = 0; i < n; i++) keys[i] = media[i].getMimeType();
+                return (i, j) -> keys[i].compareTo(keys[j]);
+            }
+            case NUMERIC: {
+                NumericComparator.Key[] keys = new NumericComparator.Key[n];
+                for (int i = 0; i < n; i++) keys[i] = new NumericComparator.Key(media[i].getPath());
+                return (i, j) -> NumericComparator.compare(keys[i], keys[j]);
+            }
+        }
+    }
+
+    private int[] sort(IndexComparator comparator) {
+        int n = media.length;
+        int[] permutation = new int[n];
+        for (int i = 0; i < n; i++) permutation[i] = i;
+        if (n < 2) return permutation;
+
+        int[] buffer = permutation.clone();
+        if (n < PARALLEL_THRESHOLD) mergeSort(buffer, permutation, 0, n, comparator);
+        else getPool().invoke(new SortTask(buffer, permutation, 0, n, comparator));
+        return permutation;
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) pool = new ForkJoinPool();
+        return pool;
+    }
+
+    /**
+     * Stable top-down merge sort, src and dst must hold the same values on [from, to),
+     * the sorted range ends up in dst.
+     */
+    private static void mergeSort(int[] src, int[] dst, int from, int to, IndexComparator comparator) {
+        if (to - from < 8) {
+            insertionSort(dst, from, to, comparator);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(dst, src, from, mid, comparator);
+        mergeSort(dst, src, mid, to, comparator);
+        merge(src, dst, from, mid, to, comparator);
+    }
+
+    private static void insertionSort(int[] a, int from, int to, IndexComparator comparator) {
+        for (int i = from + 1; i < to; i++) {
+            int value = a[i];
+            int j = i - 1;
+            while (j >= from && comparator.compare(a[j], value) > 0) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = value;
+        }
+    }
+
+    private static void merge(int[] src, int[] dst, int from, int mid, int to, IndexComparator comparator) {
+        if (comparator.compare(src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, from, dst, from, to - from);
+            return;
+        }
+        for (int i = from, p = from, q = mid; i < to; i++) {
+            if (q >= to || (p < mid && comparator.compare(src[p], src[q]) <= 0)) dst[i] = src[p++];
+            else dst[i] = src[q++];
+        }
+    }
+
+    private static class SortTask extends RecursiveAction {
+        private final int[] src, dst;
+        private final int from, to;
+        private final IndexComparator comparator;
+
+        SortTask(int[] src, int[] dst, int from, int to, IndexComparator comparator) {
+            this.src = src;
+            this.dst = dst;
+            this.from = from;
+            this.to = to;
+            this.comparator = comparator;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < PARALLEL_THRESHOLD) {
+                mergeSort(src, dst, from, to, comparator);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new SortTask(dst, src, from, mid, comparator),
+                    new SortTask(dst, src, mid, to, comparator));
+            merge(src, dst, from, mid, to, comparator);
+        }
+    }
+}
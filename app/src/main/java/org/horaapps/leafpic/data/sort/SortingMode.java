@@ -9,7 +9,7 @@ import android.provider.MediaStore;
 public enum SortingMode {
   NAME (0, MediaStore.MediaColumns.DISPLAY_NAME, MediaStore.Images.ImageColumns.BUCKET_DISPLAY_NAME),
   DATE (1, MediaStore.MediaColumns.DATE_MODIFIED, "max(" + MediaStore.Images.Media.DATE_MODIFIED + ")"),
-  SIZE(2, MediaStore.MediaColumns.SIZE, "count(*)"),
+  SIZE(2, MediaStore.MediaColumns.SIZE, "sum(" + MediaStore.MediaColumns.SIZE + ")"),
   TYPE(3, MediaStore.MediaColumns.MIME_TYPE),
   NUMERIC(4, MediaStore.MediaColumns.DISPLAY_NAME, MediaStore.Images.ImageColumns.BUCKET_DISPLAY_NAME);
 
@@ -33,7 +33,9 @@ import org.horaapps.leafpic.data.Album;
 import org.horaapps.leafpic.data.AlbumsHelper;
 import org.horaapps.leafpic.data.HandlingAlbums;
 import org.horaapps.leafpic.data.MediaHelper;
+import org.horaapps.leafpic.data.filter.ExcludedFoldersFilter;
 import org.horaapps.leafpic.data.provider.CPHelper;
+import org.horaapps.leafpic.data.sort.AlbumsComparators;
 import org.horaapps.leafpic.data.sort.SortingMode;
 import org.horaapps.leafpic.data.sort.SortingOrder;
 import org.horaapps.leafpic.progress.ProgressBottomSheet;
@@ -41,6 +43,7 @@ import org.horaapps.leafpic.util.AlertDialogsHelper;
 import org.horaapps.leafpic.util.AnimationUtils;
 import org.horaapps.leafpic.util.DeviceUtils;
 import org.horaapps.leafpic.util.Measure;
+import org.horaapps.leafpic.util.RxBatch;
 import org.horaapps.leafpic.util.Security;
 import org.horaapps.leafpic.util.preferences.Prefs;
 import org.horaapps.leafpic.views.GridSpacingItemDecoration;
@@ -72,7 +75,7 @@ public class AlbumsFragment extends BaseMediaGridFragment {
     private AlbumClickListener listener;
 
     private boolean hidden = false;
-    ArrayList<String> excuded = new ArrayList<>();
+    ExcludedFoldersFilter excuded = ExcludedFoldersFilter.empty();
 
     public interface AlbumClickListener {
         void onAlbumClick(Album album);
@@ -82,7 +85,7 @@ public class AlbumsFragment extends BaseMediaGridFragment {
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setHasOptionsMenu(true);
-        excuded = db().getExcludedFolders(getContext());
+        excuded = ExcludedFoldersFilter.load(getContext());
     }
 
     @Override
@@ -110,9 +113,10 @@ public class AlbumsFragment extends BaseMediaGridFragment {
         CPHelper.getAlbums(getContext(), hidden, excuded, sortingMode(), sortingOrder())
                 .subscribeOn(Schedulers.io())
                 .map(album -> album.withSettings(HandlingAlbums.getSettings(db, album.getPath())))
+                .compose(RxBatch.sortedChunks(AlbumsComparators.getComparator(sortingMode(), sortingOrder())))
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(
-                        album -> adapter.add(album),
+                        chunk -> adapter.addAll(chunk),
                         throwable -> {
                             refresh.setRefreshing(false);
                             throwable.printStackTrace();
@@ -317,7 +321,7 @@ public class AlbumsFragment extends BaseMediaGridFragment {
                     hideDialog.setButton(AlertDialog.BUTTON_NEUTRAL, getString(R.string.exclude).toUpperCase(), (dialog, which) -> {
                         for (Album album : adapter.getSelectedAlbums()) {
                             db().excludeAlbum(album.getPath());
-                            excuded.add(album.getPath());
+                            excuded.exclude(album.getPath());
                         }
                         adapter.removeSelectedAlbums();
                     });
@@ -392,15 +396,15 @@ public class AlbumsFragment extends BaseMediaGridFragment {
                     if (adapter.getSelectedCount() > 1) {
                         for (Album album : adapter.getSelectedAlbums()) {
                             db().excludeAlbum(album.getPath());
-                            excuded.add(album.getPath());
+                            excuded.exclude(album.getPath());
                         }
                         adapter.removeSelectedAlbums();
 
                     } else {
                         String path = spinnerParents.getSelectedItem().toString();
                         db().excludeAlbum(path);
-                        excuded.add(path);
-                        adapter.removeAlbumsThatStartsWith(path);
+                        excuded.exclude(path);
+                        adapter.removeExcludedAlbums(excuded);
                         adapter.forceSelectedCount(0);
                     }
                     updateToolbar();
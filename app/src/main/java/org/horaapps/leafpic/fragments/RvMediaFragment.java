@@ -23,6 +23,7 @@ import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.animation.OvershootInterpolator;
@@ -34,6 +35,8 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.mikepenz.google_material_typeface_library.GoogleMaterial;
+import com.turingtechnologies.materialscrollbar.CustomIndicator;
+import com.turingtechnologies.materialscrollbar.DragScrollBar;
 
 import org.horaapps.leafpic.ImageNetClasses;
 import org.horaapps.leafpic.R;
@@ -44,8 +47,8 @@ import org.horaapps.leafpic.data.HandlingAlbums;
 import org.horaapps.leafpic.data.Media;
 import org.horaapps.leafpic.data.MediaHelper;
 import org.horaapps.leafpic.data.filter.FilterMode;
-import org.horaapps.leafpic.data.filter.MediaFilter;
-import org.horaapps.leafpic.data.provider.CPHelper;
+import org.horaapps.leafpic.data.provider.MediaRepository;
+import org.horaapps.leafpic.data.sort.MediaComparators;
 import org.horaapps.leafpic.data.sort.SortingMode;
 import org.horaapps.leafpic.data.sort.SortingOrder;
 import org.horaapps.leafpic.interfaces.MediaClickListener;
@@ -57,6 +60,7 @@ import org.horaapps.leafpic.util.DeviceUtils;
 import org.horaapps.leafpic.util.InferenceTask;
 import org.horaapps.leafpic.util.Measure;
 import org.horaapps.leafpic.util.MediaUtils;
+import org.horaapps.leafpic.util.RxBatch;
 import org.horaapps.leafpic.util.Security;
 import org.horaapps.leafpic.util.StringUtils;
 import org.horaapps.leafpic.util.preferences.Prefs;
@@ -92,6 +96,7 @@ public class RvMediaFragment extends BaseMediaGridFragment {
 
     @BindView(R.id.media) RecyclerView rv;
     @BindView(R.id.swipe_refresh) SwipeRefreshLayout refresh;
+    @BindView(R.id.media_scroll_bar) DragScrollBar scrollBar;
 
     private MediaAdapter adapter;
     private GridSpacingItemDecoration spacingDecoration;
@@ -131,29 +136,55 @@ public class RvMediaFragment extends BaseMediaGridFragment {
         setUpColumns();
     }
 
+    /**
+     * Show the section of the dragged position from its start, the one of the bubble.
+     */
+    private void snapToSection() {
+        GridLayoutManager layoutManager = (GridLayoutManager) rv.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        if (first != RecyclerView.NO_POSITION)
+            layoutManager.scrollToPositionWithOffset(adapter.getSectionStart(first), 0);
+    }
+
     private void reload() {
         loadAlbum(album);
     }
 
     private void loadAlbum(Album album) {
+        if (this.album == album && adapter.getItemCount() > 0) {
+            // NOTE: a reload of what is on screen, the adapter dispatches only what changed
+            MediaRepository.getMedia(getContext(), album, album.filterMode())
+                    .subscribeOn(Schedulers.io())
+                    .toSortedList(MediaComparators.getComparator(album.settings))
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribe(media -> adapter.setMedia(media, () -> onAlbumLoaded(album)),
+                            throwable -> {
+                                refresh.setRefreshing(false);
+                                Log.wtf("asd", throwable);
+                            });
+            return;
+        }
+
         this.album = album;
         adapter.setupFor(album);
-        CPHelper.getMedia(getContext(), album)
+        MediaRepository.getMedia(getContext(), album, album.filterMode())
                 .subscribeOn(Schedulers.io())
+                .compose(RxBatch.sortedChunks(MediaComparators.getComparator(album.settings)))
                 .observeOn(AndroidSchedulers.mainThread())
-                .filter(media -> MediaFilter.getFilter(album.filterMode()).accept(media))
-                .subscribe(media -> adapter.add(media),
+                .subscribe(chunk -> adapter.addAll(chunk),
                         throwable -> {
                             refresh.setRefreshing(false);
                             Log.wtf("asd", throwable);
                         },
-                        () -> {
-                            album.setCount(getCount());
-                            if (getNothingToShowListener() != null)
-                                getNothingToShowListener().changedNothingToShow(getCount() == 0);
-                            refresh.setRefreshing(false);
-                        });
+                        () -> onAlbumLoaded(album));
+
+    }
 
+    private void onAlbumLoaded(Album album) {
+        album.setCount(getCount());
+        if (getNothingToShowListener() != null)
+            getNothingToShowListener().changedNothingToShow(getCount() == 0);
+        refresh.setRefreshing(false);
     }
 
     @Override
@@ -187,8 +218,18 @@ public class RvMediaFragment extends BaseMediaGridFragment {
 
         adapter = new MediaAdapter(getContext(), album.settings.getSortingMode(), album.settings.getSortingOrder(), this);
 
-        refresh.setOnRefreshListener(this::reload);
+        refresh.setOnRefreshListener(() -> {
+            MediaRepository.invalidate(album);
+            reload();
+        });
         rv.setAdapter(adapter);
+        // NOTE: the bubble shows the section of the dragged position, see MediaAdapter#getCustomStringForElement
+        scrollBar.setIndicator(new CustomIndicator(getContext()), true);
+        // the touch is only watched, the scroll bar still handles it
+        scrollBar.setOnTouchListener((bar, event) -> {
+            if (event.getActionMasked() == MotionEvent.ACTION_UP) snapToSection();
+            return false;
+        });
 
         return v;
     }
@@ -388,10 +429,15 @@ public class RvMediaFragment extends BaseMediaGridFragment {
                 return true;
 
             case R.id.size_sort_mode:
-                adapter.changeSortingMode(SortingMode.SIZE);
                 HandlingAlbums.getInstance(getContext()).setSortingMode(album.getPath(), SortingMode.SIZE.getValue());
                 album.setSortingMode(SortingMode.SIZE);
                 item.setChecked(true);
+                // NOTE: the sizes are loaded only to sort by them, see CPHelper#getGridProfile
+                if (adapter.hasSizes()) adapter.changeSortingMode(SortingMode.SIZE);
+                else {
+                    adapter.setSortingMode(SortingMode.SIZE);
+                    reload();
+                }
                 return true;
 
             case R.id.numeric_sort_mode:
@@ -429,6 +475,10 @@ public class RvMediaFragment extends BaseMediaGridFragment {
                 }
                 return true;
 
+            case R.id.fix_dates:
+                showRepairDatesBottomSheet();
+                return true;
+
             case R.id.analyze:
                 // TODO: wip
                 new InferenceTask(adapter).execute();
@@ -641,6 +691,22 @@ public class RvMediaFragment extends BaseMediaGridFragment {
                 });
     }
 
+    private void showRepairDatesBottomSheet() {
+        MediaUtils.repairDates(getContext(), adapter.getSelected(), getChildFragmentManager(),
+                new ProgressBottomSheet.Listener<Media>() {
+                    @Override
+                    public void onCompleted() {
+                        adapter.clearSelected();
+                        // NOTE: the media moved with their new dates
+                        reload();
+                    }
+
+                    @Override
+                    public void onProgress(Media item) {
+                    }
+                });
+    }
+
     public int getCount() {
         return adapter.getItemCount();
     }
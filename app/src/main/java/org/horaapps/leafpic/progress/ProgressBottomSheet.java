@@ -53,6 +53,7 @@ public class ProgressBottomSheet<T> extends BottomSheetDialogFragment {
         int title;
         boolean showCancel = true;
         boolean autoDismiss = false;
+        int count = -1;
         List<? extends ObservableSource<? extends T>> sources;
         Listener<T> listener;
 
@@ -75,6 +76,14 @@ public class ProgressBottomSheet<T> extends BottomSheetDialogFragment {
             return this;
         }
 
+        /**
+         * The number of items the sources emit in all, when it is not one each.
+         */
+        public Builder<T> count(int count) {
+            this.count = count;
+            return this;
+        }
+
         public Builder<T> listener(Listener<T> listener) {
             this.listener = listener;
             return this;
@@ -93,6 +102,7 @@ public class ProgressBottomSheet<T> extends BottomSheetDialogFragment {
             bottomSheet.setAutoDismiss(autoDismiss);
             bottomSheet.setShowCancel(showCancel);
             bottomSheet.setSources(sources);
+            bottomSheet.setCount(count != -1 ? count : sources.size());
             bottomSheet.setListener(listener);
             return bottomSheet;
 
@@ -118,6 +128,7 @@ public class ProgressBottomSheet<T> extends BottomSheetDialogFragment {
     int title;
     boolean showCancel = true;
     boolean autoDismiss = false;
+    int count;
     List<? extends ObservableSource<? extends T>> sources;
     Listener<T> listener;
 
@@ -138,6 +149,10 @@ public class ProgressBottomSheet<T> extends BottomSheetDialogFragment {
         this.sources = sources;
     }
 
+    public void setCount(int count) {
+        this.count = count;
+    }
+
     public void setListener(Listener<T> listener) {
         this.listener = listener;
     }
@@ -206,7 +221,7 @@ public class ProgressBottomSheet<T> extends BottomSheetDialogFragment {
         ButterKnife.bind(this, view);
         setupViews(view);
 
-        progressBar.setMax(sources.size());
+        progressBar.setMax(count);
         setProgress(0);
 
 
@@ -214,6 +229,8 @@ public class ProgressBottomSheet<T> extends BottomSheetDialogFragment {
                 .observeOn(AndroidSchedulers.mainThread(), true)
                 .subscribeOn(Schedulers.newThread())
                 .doFinally(() -> {
+                    // NOTE: the items failed are not emitted, the progress is full anyway
+                    setProgress(progressBar.getMax());
                     done();
                     if (autoDismiss)
                         dismiss();
@@ -0,0 +1,182 @@
+package org.horaapps.leafpic.timeline;
+
+import android.support.annotation.NonNull;
+
+import org.horaapps.leafpic.data.Media;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Groups timestamps in days, weeks, months and years with integer arithmetic only.
+ * <p>
+ * Each timestamp is turned once into an epoch-day of the local time zone, the offset lookup
+ * being shared by all the timestamps of the same day. Year, month and day come from the
+ * epoch-day (days to civil date), and the week of the month follows the first day of the
+ * week and the minimal days of the first week of the default Calendar, so the groups are
+ * the same ones of {@link GroupingMode#isInGroup(Calendar, Calendar)}.
+ * <p>
+ * Not thread safe, create one for each build.
+ */
+public final class DateBuckets {
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    private final TimeZone timeZone;
+    private final int firstDayOfWeek;
+    private final int minimalDaysInFirstWeek;
+
+    // the last day without offset changes: [dayStart, dayEnd) in UTC is the local epoch-day 'day'
+    private long dayStart = Long.MAX_VALUE, dayEnd = Long.MIN_VALUE;
+    private int day;
+
+    public DateBuckets() {
+        this(TimeZone.getDefault(), Calendar.getInstance());
+    }
+
+    public DateBuckets(@NonNull TimeZone timeZone, @NonNull Calendar weekRules) {
+        this.timeZone = timeZone;
+        this.firstDayOfWeek = weekRules.getFirstDayOfWeek();
+        this.minimalDaysInFirstWeek = weekRules.getMinimalDaysInFirstWeek();
+    }
+
+    /**
+     * @return the days from 1970-01-01 to the local date of the timestamp
+     */
+    public int epochDay(long millis) {
+        if (millis >= dayStart && millis < dayEnd) return day;
+
+        int offset = timeZone.getOffset(millis);
+        int epochDay = (int) floorDiv(millis + offset, MILLIS_PER_DAY);
+        long start = epochDay * MILLIS_PER_DAY - offset;
+        // NOTE: a day with a change of offset (DST) is not cached, its bounds would be wrong
+        if (timeZone.getOffset(start) == offset && timeZone.getOffset(start + MILLIS_PER_DAY - 1) == offset) {
+            dayStart = start;
+            dayEnd = start + MILLIS_PER_DAY;
+            day = epochDay;
+        }
+        return epochDay;
+    }
+
+    /**
+     * @return the id of the group of the epoch-day, the ids grow with the dates
+     */
+    public int bucketOf(@NonNull GroupingMode groupingMode, int epochDay) {
+        switch (groupingMode) {
+            case DAY: default:
+                return epochDay;
+            case WEEK: {
+                int civil = toCivil(epochDay);
+                int monthId = yearOf(civil) * 12 + monthOf(civil) - 1;
+                return monthId * 8 + weekOfMonth(epochDay, dayOfMonthOf(civil));
+            }
+            case MONTH: {
+                int civil = toCivil(epochDay);
+                return yearOf(civil) * 12 + monthOf(civil) - 1;
+            }
+            case YEAR:
+                return yearOf(toCivil(epochDay));
+        }
+    }
+
+    private static final int FEBRUARY_28 = 2 << 5 | 28, FEBRUARY_29 = 2 << 5 | 29;
+
+    /**
+     * @return the day of the year of the epoch-day regardless of the year, as month << 5 | day of month:
+     * the same for every February 29th, and increasing along the year
+     */
+    public static int monthDayOf(int epochDay) {
+        return toCivil(epochDay) & 0x1ff;
+    }
+
+    /**
+     * @return the days of the year of the media to show on the epoch-day as taken on this day:
+     * its own, and February 29th on February 28th of the years without it
+     */
+    @NonNull
+    public static int[] onThisDay(int epochDay) {
+        int monthDay = monthDayOf(epochDay);
+        // NOTE: the day after February 28th is March 1st in the years without a February 29th
+        if (monthDay == FEBRUARY_28 && monthDayOf(epochDay + 1) != FEBRUARY_29)
+            return new int[]{FEBRUARY_28, FEBRUARY_29};
+        return new int[]{monthDay};
+    }
+
+    /**
+     * @return the id of the group of each media, by date modified
+     */
+    @NonNull
+    public int[] getBuckets(@NonNull List<Media> media, @NonNull GroupingMode groupingMode) {
+        int[] buckets = new int[media.size()];
+        int lastDay = 0, lastBucket = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            int epochDay = epochDay(media.get(i).getDateModified());
+            if (i == 0 || epochDay != lastDay) {
+                lastDay = epochDay;
+                lastBucket = bucketOf(groupingMode, epochDay);
+            }
+            buckets[i] = lastBucket;
+        }
+        return buckets;
+    }
+
+    /**
+     * Same of Calendar.WEEK_OF_MONTH: the first week is the first one with at least
+     * minimalDaysInFirstWeek days of the month, the days before it are in week 0.
+     */
+    private int weekOfMonth(int epochDay, int dayOfMonth) {
+        int firstOfMonth = epochDay - (dayOfMonth - 1);
+        // days between the start of its week and the first of the month
+        int lead = floorMod(dayOfWeek(firstOfMonth) - firstDayOfWeek, 7);
+        int firstWeek = 7 - lead >= minimalDaysInFirstWeek ? 1 : 0;
+        return (dayOfMonth - 1 + lead) / 7 + firstWeek;
+    }
+
+    /**
+     * @return Calendar.SUNDAY .. Calendar.SATURDAY, 1970-01-01 was a Thursday
+     */
+    static int dayOfWeek(int epochDay) {
+        return floorMod(epochDay + 4, 7) + Calendar.SUNDAY;
+    }
+
+    /**
+     * Days to civil date (proleptic Gregorian), packed as year << 9 | month << 5 | day.
+     */
+    static int toCivil(int epochDay) {
+        int z = epochDay + 719468;
+        int era = (int) floorDiv(z, 146097);
+        int doe = z - era * 146097;                                   // [0, 146096]
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365; // [0, 399]
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);            // [0, 365]
+        int mp = (5 * doy + 2) / 153;                                 // [0, 11], from March
+        int d = doy - (153 * mp + 2) / 5 + 1;                         // [1, 31]
+        int m = mp < 10 ? mp + 3 : mp - 9;                            // [1, 12]
+        int y = yoe + era * 400 + (m <= 2 ? 1 : 0);
+        return y << 9 | m << 5 | d;
+    }
+
+    // NOTE: Math.floorDiv and Math.floorMod need API 24
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x ^ y) < 0) ? q - 1 : q;
+    }
+
+    private static int floorMod(int x, int y) {
+        int m = x % y;
+        return m != 0 && (m ^ y) < 0 ? m + y : m;
+    }
+
+    static int yearOf(int civil) {
+        return civil >> 9;
+    }
+
+    static int monthOf(int civil) {
+        return (civil >> 5) & 0xf;
+    }
+
+    static int dayOfMonthOf(int civil) {
+        return civil & 0x1f;
+    }
+}
@@ -4,6 +4,7 @@ import android.support.annotation.NonNull;
 
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.Locale;
 
 /**
@@ -85,6 +86,9 @@ public enum GroupingMode {
     private static final String HEADER_PATTERN_MONTH = "MMM yyyy";
     private static final String HEADER_PATTERN_YEAR = "yyyy";
 
+    // pattern -> formatter, a SimpleDateFormat is expensive to build
+    private static final HashMap<String, SimpleDateFormat> formatters = new HashMap<>();
+
     /**
      * Check if the Calendar for media items belong in the same group.
      *
@@ -121,6 +125,15 @@ public enum GroupingMode {
 
     @NonNull
     public String getFormattedDate(@NonNull String formatter, @NonNull Calendar calendar) {
-        return new SimpleDateFormat(formatter, Locale.ENGLISH).format(calendar.getTime());
+        // NOTE: a SimpleDateFormat is not thread safe, the cached ones are used under the lock
+        synchronized (formatters) {
+            SimpleDateFormat format = formatters.get(formatter);
+            if (format == null) {
+                format = new SimpleDateFormat(formatter, Locale.ENGLISH);
+                formatters.put(formatter, format);
+            }
+            format.setTimeZone(calendar.getTimeZone());
+            return format.format(calendar.getTime());
+        }
     }
 }
@@ -0,0 +1,88 @@
+package org.horaapps.leafpic.timeline;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Maps the positions of the timeline, headers included, to the indexes of the media and back,
+ * without a list holding both.
+ * <p>
+ * The header of group g sits at starts[g] + g: the positions of the headers are a sorted int[],
+ * and every translation is a binary search on it (or on the starts), O(log h) with h headers.
+ */
+public final class HeaderPositions {
+
+    private final int[] starts;
+    private final int[] positions;
+    private final int mediaCount;
+
+    /**
+     * @param starts     the index of the first media of each group, ascending, see {@link TimelineIndex}
+     * @param mediaCount the number of media
+     */
+    public HeaderPositions(@NonNull int[] starts, int mediaCount) {
+        this.starts = starts;
+        this.mediaCount = mediaCount;
+        this.positions = new int[starts.length];
+        for (int g = 0; g < starts.length; g++) positions[g] = starts[g] + g;
+    }
+
+    public int getItemCount() {
+        return mediaCount + starts.length;
+    }
+
+    public int getGroupCount() {
+        return starts.length;
+    }
+
+    public int getHeaderPosition(int group) {
+        return positions[group];
+    }
+
+    /**
+     * @return the index of the first media of the group
+     */
+    public int getGroupStart(int group) {
+        return starts[group];
+    }
+
+    /**
+     * @return the group of the item at the position, be it its header or one of its media
+     */
+    public int getGroup(int position) {
+        return upperBound(positions, position) - 1;
+    }
+
+    public boolean isHeader(int position) {
+        int group = getGroup(position);
+        return group >= 0 && positions[group] == position;
+    }
+
+    /**
+     * @return the index of the media at the position, -1 if it is a header
+     */
+    public int toMediaIndex(int position) {
+        int group = getGroup(position);
+        if (group >= 0 && positions[group] == position) return -1;
+        return position - (group + 1);
+    }
+
+    /**
+     * @return the position of the media with the index
+     */
+    public int toPosition(int mediaIndex) {
+        return mediaIndex + upperBound(starts, mediaIndex);
+    }
+
+    /**
+     * @return the number of values of the sorted array that are lower or equal to key
+     */
+    private static int upperBound(int[] a, int key) {
+        int low = 0, high = a.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (a[mid] <= key) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+}
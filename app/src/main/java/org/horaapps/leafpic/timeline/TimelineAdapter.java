@@ -4,14 +4,24 @@ import android.content.Context;
 import android.graphics.Rect;
 import android.support.annotation.DimenRes;
 import android.support.annotation.NonNull;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import com.turingtechnologies.materialscrollbar.ICustomAdapter;
+
 import org.horaapps.leafpic.R;
+import org.horaapps.leafpic.adapters.AsyncDiffer;
+import org.horaapps.leafpic.adapters.PendingRemovals;
+import org.horaapps.leafpic.adapters.SectionIndex;
+import org.horaapps.leafpic.adapters.SelectionModel;
 import org.horaapps.leafpic.data.Media;
+import org.horaapps.leafpic.data.sort.MediaComparators;
+import org.horaapps.leafpic.data.sort.SortingMode;
 import org.horaapps.leafpic.data.sort.SortingOrder;
 import org.horaapps.leafpic.items.ActionsListener;
 import org.horaapps.leafpic.timeline.data.TimelineHeaderModel;
@@ -21,8 +31,8 @@ import org.horaapps.liz.ThemedAdapter;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.GregorianCalendar;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -34,10 +44,12 @@ import static org.horaapps.leafpic.timeline.ViewHolder.TimelineViewHolder;
 /**
  * Adapter for showing Timeline.
  */
-public class TimelineAdapter extends ThemedAdapter<TimelineViewHolder> {
+public class TimelineAdapter extends ThemedAdapter<TimelineViewHolder> implements ICustomAdapter {
 
-    private List<TimelineItem> timelineItems;
-    private ArrayList<Media> mediaItems;
+    // NOTE: there is no list of headers and media, positions are mapped on the fly, see HeaderPositions
+    private Timeline timeline;
+    private final PendingRemovals pendingRemovals = new PendingRemovals(this::removeAll);
+    private final AsyncDiffer<ArrayList<Media>, Timeline> differ;
 
     private SortingOrder sortingOrder;
     private GroupingMode groupingMode;
@@ -46,38 +58,78 @@ public class TimelineAdapter extends ThemedAdapter<TimelineViewHolder> {
     private final ActionsListener actionsListener;
 
     /**
-     * This set maintains the selected positions by user.
+     * The media (indexes in the media list, not adapter positions) selected by the user:
+     * they do not shift when the headers change.
      */
-    private Set<Integer> selectedPositions;
+    private final SelectionModel selectedMedia = new SelectionModel();
 
     public TimelineAdapter(@NonNull Context context, ActionsListener actionsListener, int timelineGridSize) {
         super(context);
-        timelineItems = new ArrayList<>();
         this.timelineGridSize = timelineGridSize;
 
         this.sortingOrder = SortingOrder.DESCENDING;
-        selectedPositions = new HashSet<>();
 
         this.actionsListener = actionsListener;
+        this.differ = new AsyncDiffer<>(this, new AsyncDiffer.Target<ArrayList<Media>, Timeline>() {
+            @Override
+            public Timeline getContent() {
+                return timeline;
+            }
+
+            @Override
+            public boolean isShowing(@NonNull Timeline content) {
+                // NOTE: a removal or a new grouping mode make a new timeline
+                return timeline == content;
+            }
+
+            @NonNull
+            @Override
+            public Timeline build(@NonNull ArrayList<Media> source) {
+                return new Timeline(source, new TimelineIndex(source), groupingMode);
+            }
+
+            @Override
+            public int getItemCount(@NonNull Timeline content) {
+                return content.size();
+            }
+
+            @NonNull
+            @Override
+            public DiffUtil.Callback getDiffCallback(@NonNull Timeline oldContent, @NonNull Timeline newContent) {
+                return new TimelineDiff(oldContent, newContent);
+            }
+
+            @Override
+            public void setContent(@NonNull Timeline content) {
+                timeline = content.groupingMode == groupingMode
+                        ? content : new Timeline(content.media, content.index, groupingMode);
+            }
+        });
     }
 
     public ArrayList<Media> getMedia() {
-        return mediaItems;
+        return timeline != null ? timeline.media : null;
     }
 
     public boolean clearSelected() {
-        Set<Integer> oldSelections = new HashSet<>(selectedPositions);
-        selectedPositions.clear();
-        for (int selectedPos : oldSelections) notifyItemChanged(selectedPos);
+        if (timeline != null) {
+            // one notification for each run of selected media
+            for (int from = selectedMedia.nextSelected(0); from != -1; ) {
+                int to = selectedMedia.nextUnselected(from);
+                notifyMediaRangeChanged(from, to);
+                from = selectedMedia.nextSelected(to);
+            }
+        }
+        selectedMedia.clear();
         return true;
     }
 
     public int getSelectedCount() {
-        return selectedPositions.size();
+        return selectedMedia.count();
     }
 
     public int getMediaCount() {
-        return mediaItems.size();
+        return timeline != null ? timeline.media.size() : 0;
     }
 
     /**
@@ -86,41 +138,71 @@ public class TimelineAdapter extends ThemedAdapter<TimelineViewHolder> {
      * @return A list containing the selected Media items.
      */
     public List<Media> getSelectedMedia() {
-        List<Media> selectedMedia = new ArrayList<>();
-        for (int selectedPos : selectedPositions) {
-            selectedMedia.add((Media) timelineItems.get(selectedPos));
+        List<Media> selected = new ArrayList<>(selectedMedia.count());
+        for (int i = selectedMedia.nextSelected(0); i != -1; i = selectedMedia.nextSelected(i + 1)) {
+            selected.add(timeline.media.get(i));
         }
-        return selectedMedia;
+        return selected;
     }
 
     /**
      * Select all elements within the Timeline view.
      */
     public void selectAll() {
-        int timelineItemSize = timelineItems.size();
-        for (int pos = 0; pos < timelineItemSize; pos++) {
-
-            TimelineItem timelineItem = getItem(pos);
-            if (timelineItem.getTimelineType() == TimelineItem.TYPE_HEADER) continue;
-
-            // Select the element
-            selectedPositions.add(pos);
-        }
+        if (timeline == null) return;
+        selectedMedia.setRange(0, timeline.media.size());
+        notifyItemRangeChanged(0, getItemCount());
+        actionsListener.onSelectionCountChanged(selectedMedia.count(), timeline.media.size());
+    }
 
-        notifyDataSetChanged();
-        actionsListener.onSelectionCountChanged(selectedPositions.size(), mediaItems.size());
+    /**
+     * Notify the positions from the one of the media at from to the one of the media at to - 1.
+     */
+    private void notifyMediaRangeChanged(int from, int to) {
+        int start = timeline.positions.toPosition(from);
+        notifyItemRangeChanged(start, timeline.positions.toPosition(to - 1) - start + 1);
     }
 
     /**
      * Set the grouping mode (DAY, WEEK, MONTH, YEAR) of the Timeline.
      */
     public void setGroupingMode(@NonNull GroupingMode groupingMode) {
+        GroupingMode oldGroupingMode = this.groupingMode;
         this.groupingMode = groupingMode;
 
-        if (mediaItems == null) return;
+        if (timeline == null || oldGroupingMode == groupingMode) return;
+
+        pendingRemovals.flush();
+        // NOTE: only the headers change, the groups of every mode are already in the index
+        switchGroupingMode(timeline.groupingMode, groupingMode);
+    }
+
+    /**
+     * Swap the headers of a grouping mode with the ones of another one.
+     * The groups nest, so the headers are either kept (with a new text), added or dropped.
+     */
+    private void switchGroupingMode(@NonNull GroupingMode from, @NonNull GroupingMode to) {
+        int[] oldStarts = timeline.index.getGroupStarts(from);
+        int[] newStarts = timeline.index.getGroupStarts(to);
+
+        int i = 0, j = 0;
+        while (i < oldStarts.length || j < newStarts.length) {
+            int oldStart = i < oldStarts.length ? oldStarts[i] : Integer.MAX_VALUE;
+            int newStart = j < newStarts.length ? newStarts[j] : Integer.MAX_VALUE;
+            int start = Math.min(oldStart, newStart);
+
+            // the header as it is after the previous notifications: the media before it plus the new headers
+            int position = start + j;
+
+            if (newStart == start) {
+                if (oldStart == start) notifyItemChanged(position);
+                else notifyItemInserted(position);
+                j++;
+            } else notifyItemRemoved(position);
+            if (oldStart == start) i++;
+        }
 
-        // Rebuild the Timeline Items
-        buildTimelineItems();
+        timeline = new Timeline(timeline.media, timeline.index, to);
     }
 
     /**
@@ -157,10 +239,8 @@ public class TimelineAdapter extends ThemedAdapter<TimelineViewHolder> {
         gridLayoutManager.setSpanSizeLookup(new GridLayoutManager.SpanSizeLookup() {
             @Override
             public int getSpanSize(int position) {
-                TimelineItem timelineItem = getItem(position);
-
                 // If we have a header item, occupy the entire width
-                if (timelineItem.getTimelineType() == TimelineItem.TYPE_HEADER) return timelineGridSize;
+                if (timeline.positions.isHeader(position)) return timelineGridSize;
 
                 // Else, a media item takes up a single space
                 return 1;
@@ -168,40 +248,31 @@ public class TimelineAdapter extends ThemedAdapter<TimelineViewHolder> {
         });
     }
 
-    private void clearAll() {
-        timelineItems.clear();
-    }
-
     public boolean isSelecting() {
-        return !selectedPositions.isEmpty();
+        return !selectedMedia.isEmpty();
     }
 
     @Override
     public int getItemViewType(int position) {
-        return getItem(position).getTimelineType();
-    }
-
-    @NonNull
-    private TimelineItem getItem(int position) {
-        return timelineItems.get(position);
+        return timeline.positions.isHeader(position) ? TimelineItem.TYPE_HEADER : TimelineItem.TYPE_MEDIA;
     }
 
     @Override
     public void onBindViewHolder(@NonNull TimelineViewHolder viewHolder, int position) {
         super.onBindViewHolder(viewHolder, position);
-        TimelineItem timelineItem = getItem(position);
 
         if (viewHolder instanceof TimelineHeaderViewHolder) {
             TimelineHeaderViewHolder headerViewHolder = (TimelineHeaderViewHolder) viewHolder;
-            headerViewHolder.bind((TimelineHeaderModel) timelineItem);
+            headerViewHolder.bind(timeline.getHeader(timeline.positions.getGroup(position)));
 
         } else if (viewHolder instanceof TimelineMediaViewHolder) {
             TimelineMediaViewHolder mediaHolder = (TimelineMediaViewHolder) viewHolder;
-            mediaHolder.bind((Media) timelineItem, selectedPositions.contains(position));
+            int mediaIndex = timeline.positions.toMediaIndex(position);
+            mediaHolder.bind(timeline.media.get(mediaIndex), selectedMedia.isSelected(mediaIndex));
 
             mediaHolder.layout.setOnClickListener(v -> {
                 if (isSelecting()) triggerSelection(mediaHolder.getAdapterPosition());
-                else displayMedia(timelineItem);
+                else displayMedia(mediaHolder.getAdapterPosition());
             });
 
             mediaHolder.layout.setOnLongClickListener(v -> {
@@ -212,98 +283,179 @@ public class TimelineAdapter extends ThemedAdapter<TimelineViewHolder> {
         }
     }
 
-    private void displayMedia(TimelineItem timelineItem) {
-        for (int pos = 0; pos < mediaItems.size(); pos++) {
-            Media mediaItem = mediaItems.get(pos);
-            if (mediaItem.equals(timelineItem)) {
-                actionsListener.onItemSelected(pos);
-                return;
-            }
-        }
+    /**
+     * The label of the fast scroller while dragging: the month of the item, headers included.
+     */
+    @Override
+    public String getCustomStringForElement(int element) {
+        if (timeline == null || element < 0 || element >= timeline.size()) return "";
+        int mediaIndex = timeline.positions.toMediaIndex(element);
+        if (mediaIndex < 0) mediaIndex = timeline.positions.getGroupStart(timeline.positions.getGroup(element));
+        return timeline.getSections().getLabel(mediaIndex);
+    }
+
+    /**
+     * @return the position of the header of the month of the position, or of its first media when
+     * the month starts within a group: where a drag of the fast scroller snaps to
+     */
+    public int getSectionStart(int position) {
+        if (timeline == null || position < 0 || position >= timeline.size()) return position;
+        HeaderPositions positions = timeline.positions;
+        int mediaIndex = positions.toMediaIndex(position);
+        if (mediaIndex < 0) mediaIndex = positions.getGroupStart(positions.getGroup(position));
+
+        SectionIndex sections = timeline.getSections();
+        int start = positions.toPosition(sections.getPositionForSection(sections.getSectionForPosition(mediaIndex)));
+        return start > 0 && positions.isHeader(start - 1) ? start - 1 : start;
+    }
+
+    private void displayMedia(int position) {
+        int mediaIndex = timeline.positions.toMediaIndex(position);
+        if (mediaIndex >= 0) actionsListener.onItemSelected(mediaIndex);
     }
 
     private void triggerSelection(int elementPos) {
-        int oldCount = selectedPositions.size();
+        int mediaIndex = timeline.positions.toMediaIndex(elementPos);
+        if (mediaIndex < 0) return;
+        int oldCount = selectedMedia.count();
 
-        if (selectedPositions.contains(elementPos)) selectedPositions.remove(elementPos);
-        else selectedPositions.add(elementPos);
+        selectedMedia.toggle(mediaIndex);
 
         if (oldCount == 0 && isSelecting()) actionsListener.onSelectMode(true);
         else if (oldCount == 1 && !isSelecting()) actionsListener.onSelectMode(false);
-        else actionsListener.onSelectionCountChanged(selectedPositions.size(), mediaItems.size());
+        else actionsListener.onSelectionCountChanged(selectedMedia.count(), timeline.media.size());
 
         notifyItemChanged(elementPos);
     }
 
     private void triggerSelectionAllUpTo(int elemPos) {
+        int mediaIndex = timeline.positions.toMediaIndex(elemPos);
+        if (mediaIndex < 0) return;
+
+        // the closest selected media, on either side
+        int before = selectedMedia.previousSelected(mediaIndex);
+        int after = selectedMedia.nextSelected(mediaIndex);
+        int indexRightBeforeOrAfter;
+        if (before == -1) indexRightBeforeOrAfter = after;
+        else if (after == -1) indexRightBeforeOrAfter = before;
+        else indexRightBeforeOrAfter = mediaIndex - before <= after - mediaIndex ? before : after;
+
+        if (indexRightBeforeOrAfter != -1) {
+            int from = Math.min(mediaIndex, indexRightBeforeOrAfter);
+            int to = Math.max(mediaIndex, indexRightBeforeOrAfter) + 1;
+            selectedMedia.setRange(from, to);
+            notifyMediaRangeChanged(from, to);
+            actionsListener.onSelectionCountChanged(selectedMedia.count(), timeline.media.size());
+        }
+    }
 
-        int indexRightBeforeOrAfter = -1, minOffset = Integer.MAX_VALUE;
+    /**
+     * Show new media, dispatching only what changed (by id) from the current ones.
+     * The timeline index and the diff are built on a background thread.
+     */
+    public void setMedia(@NonNull ArrayList<Media> mediaList) {
+        setMedia(mediaList, null);
+    }
 
-        for (Integer selectedPosition : selectedPositions) {
-            int offset = Math.abs(elemPos - selectedPosition);
-            if (offset < minOffset) {
-                minOffset = offset;
-                indexRightBeforeOrAfter = selectedPosition;
-            }
-        }
+    /**
+     * @param onApplied run once the new media are shown
+     */
+    @SuppressWarnings("unchecked")
+    public void setMedia(@NonNull ArrayList<Media> mediaList, @Nullable Runnable onApplied) {
+        pendingRemovals.clear();
+        HashSet<Long>[] selectedIds = new HashSet[1];
+        differ.submit(mediaList,
+                () -> selectedIds[0] = getSelectedIds(),
+                () -> {
+                    onMediaReplaced(selectedIds[0]);
+                    if (onApplied != null) onApplied.run();
+                });
+    }
 
-        if(indexRightBeforeOrAfter != -1) {
-            for (int index = Math.min(elemPos, indexRightBeforeOrAfter); index <= Math.max(elemPos, indexRightBeforeOrAfter); index++) {
-                if (timelineItems.get(index) != null && timelineItems.get(index) instanceof Media) {
-                    selectedPositions.add(index);
-                    notifyItemChanged(index);
-                }
-            }
-            actionsListener.onSelectionCountChanged(selectedPositions.size(), mediaItems.size());
+    /**
+     * @return the position of the newest media taken at or before the date, of the last one if none
+     */
+    public int getPositionOf(long date) {
+        if (timeline == null || timeline.media.isEmpty()) return 0;
+        // NOTE: newest first, the first media not newer than the date
+        ArrayList<Media> media = timeline.media;
+        int low = 0, high = media.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (media.get(mid).getDateModified() > date) low = mid + 1;
+            else high = mid;
         }
+        return timeline.positions.toPosition(Math.min(low, media.size() - 1));
     }
 
-    public void setMedia(@NonNull ArrayList<Media> mediaList) {
-        mediaItems = mediaList;
-        selectedPositions.clear();
-        buildTimelineItems();
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        // NOTE: no diff to animate anymore, the media submitted are shown when attached again
+        differ.flush();
     }
 
-    private void buildTimelineItems() {
-        clearAll();
-        timelineItems = getTimelineItems(mediaItems);
-        notifyDataSetChanged();
+    /**
+     * Add media older than all the current ones at the end, e.g. the next page of a {@link TimelineWindow}.
+     * The page is sorted newest first, when it overlaps the current media the whole list is set instead.
+     * NOTE: the groups already shown stay where they are (the last one may grow),
+     * so this is a single insertion at the end instead of a diff
+     */
+    public void appendMedia(@NonNull List<Media> older) {
+        if (older.isEmpty()) return;
+        ArrayList<Media> submitted = differ.getPending();
+        if (timeline == null || submitted != null) {
+            // on top of the media not shown yet
+            ArrayList<Media> media = new ArrayList<>(submitted != null ? submitted : older);
+            if (submitted != null) media.addAll(older);
+            setMedia(media);
+            return;
+        }
+
+        pendingRemovals.flush();
+        ArrayList<Media> media = new ArrayList<>(timeline.media.size() + older.size());
+        media.addAll(timeline.media);
+        media.addAll(older);
+
+        // NOTE: with the dates of the ExifIndex a page can overlap the media before it
+        List<Media> current = timeline.media;
+        if (!current.isEmpty() && older.get(0).getDateModified() > current.get(current.size() - 1).getDateModified()) {
+            Collections.sort(media, MediaComparators.getComparator(SortingMode.DATE, SortingOrder.DESCENDING));
+            setMedia(media);
+            return;
+        }
+
+        int oldCount = timeline.size();
+        timeline = new Timeline(media, new TimelineIndex(media), timeline.groupingMode);
+        notifyItemRangeInserted(oldCount, timeline.size() - oldCount);
+    }
+
+    @NonNull
+    private HashSet<Long> getSelectedIds() {
+        HashSet<Long> selectedIds = new HashSet<>();
+        for (Media media : getSelectedMedia()) selectedIds.add(media.getId());
+        return selectedIds;
     }
 
     /**
-     * Get the list of Timeline Items to show.
-     * Internally adds the headers to the list.
-     *
-     * @param mediaList The list of media items to show.
-     * @return A list with headers to be inflated for Timeline.
+     * Carry the selection over to the new media list.
      */
-    private List<TimelineItem> getTimelineItems(@NonNull List<Media> mediaList) {
-        // Preprocessing - Add headers in the list of media
-        // TODO: Think of ways to optimise / improve this logic
-
-        List<TimelineItem> timelineItemList = new ArrayList<>();
-
-        int headersAdded = 0;
-        Calendar currentDate = null;
-        for (int position = 0; position < mediaList.size(); position++) {
-            Calendar mediaDate = new GregorianCalendar();
-            mediaDate.setTimeInMillis(mediaList.get(position).getDateModified());
-            if (currentDate == null || !groupingMode.isInGroup(currentDate, mediaDate)) {
-                currentDate = mediaDate;
-                TimelineHeaderModel timelineHeaderModel = new TimelineHeaderModel(mediaDate);
-                timelineHeaderModel.setHeaderText(groupingMode.getGroupHeader(mediaDate));
-                timelineItemList.add(position + headersAdded, timelineHeaderModel);
-                headersAdded++;
-            }
+    private void onMediaReplaced(@NonNull Set<Long> selectedIds) {
+        selectedMedia.clear();
+        if (selectedIds.isEmpty()) return;
 
-            timelineItemList.add(mediaList.get(position));
-        }
-        return timelineItemList;
+        ArrayList<Media> media = timeline.media;
+        for (int i = 0; i < media.size(); i++)
+            if (selectedIds.contains(media.get(i).getId())) selectedMedia.set(i, true);
+
+        // NOTE: some of the selected media may be gone
+        if (!isSelecting()) actionsListener.onSelectMode(false);
+        else actionsListener.onSelectionCountChanged(selectedMedia.count(), media.size());
     }
 
     @Override
     public int getItemCount() {
-        return timelineItems.size();
+        return timeline != null ? timeline.size() : 0;
     }
 
     /**
@@ -312,16 +464,191 @@ public class TimelineAdapter extends ThemedAdapter<TimelineViewHolder> {
      * @param item The item to remove.
      */
     public void removeItem(@Nullable Media item) {
-        for (int pos = 0; pos < timelineItems.size(); pos++) {
-            TimelineItem timelineItem = timelineItems.get(pos);
-            if (timelineItem.getTimelineType() == TimelineItem.TYPE_HEADER) continue;
+        // NOTE: applied on the next frame, together with the others requested meanwhile
+        if (item != null) pendingRemovals.add(item.getId());
+    }
 
-            Media mediaItem = (Media) timelineItem;
-            if (!mediaItem.equals(item)) continue;
+    private void removeAll(Set<Long> ids) {
+        if (timeline == null) return;
+        ArrayList<Media> media = timeline.media;
+
+        int[] removed = new int[Math.min(ids.size(), media.size())];
+        int count = 0;
+        // NOTE: a new list, the one of the current timeline may be still read by a diff
+        ArrayList<Media> kept = new ArrayList<>(media.size());
+        for (int i = 0; i < media.size(); i++) {
+            Media m = media.get(i);
+            if (!ids.contains(m.getId())) kept.add(m);
+            else {
+                if (count == removed.length) removed = Arrays.copyOf(removed, count * 2 + 1);
+                removed[count++] = i;
+            }
+        }
+        if (count == 0) return;
+        removed = Arrays.copyOf(removed, count);
+
+        notifyRemoved(removed);
+
+        // shift the selection back by the media removed before each selected one
+        int[] selected = selectedMedia.toArray();
+        selectedMedia.clear();
+        int r = 0;
+        for (int i : selected) {
+            while (r < count && removed[r] < i) r++;
+            if (r < count && removed[r] == i) continue;
+            selectedMedia.set(i - r, true);
+        }
+
+        timeline = new Timeline(kept, timeline.index.withRemoved(removed), timeline.groupingMode);
+    }
+
+    /**
+     * One notifyItemRangeRemoved for each run of removed items, the headers of the groups
+     * left empty included. Only the removed media are visited, not the whole list.
+     *
+     * @param removed the indexes of the removed media, ascending
+     */
+    private void notifyRemoved(int[] removed) {
+        int[] starts = timeline.index.getGroupStarts(timeline.groupingMode);
+        int size = timeline.media.size();
+        // the start of the current run of removed items, in the list as it is after the previous notifications
+        int position = 0, run = 0, r = 0;
+
+        for (int g = 0; g < starts.length; g++) {
+            int start = starts[g];
+            int end = g + 1 < starts.length ? starts[g + 1] : size;
+            int first = r;
+            while (r < removed.length && removed[r] < end) r++;
+
+            if (r - first == end - start) {
+                // the group is gone, header included
+                run += 1 + end - start;
+                continue;
+            }
+
+            // the header is kept
+            if (run > 0) notifyItemRangeRemoved(position, run);
+            run = 0;
+            position++;
+
+            int next = start;
+            for (int k = first; k < r; k++) {
+                int kept = removed[k] - next;
+                if (kept > 0) {
+                    if (run > 0) notifyItemRangeRemoved(position, run);
+                    run = 0;
+                    position += kept;
+                }
+                run++;
+                next = removed[k] + 1;
+            }
+            if (end > next) {
+                if (run > 0) notifyItemRangeRemoved(position, run);
+                run = 0;
+                position += end - next;
+            }
+        }
+        if (run > 0) notifyItemRangeRemoved(position, run);
+    }
 
-            timelineItems.remove(pos);
-            notifyItemRemoved(pos);
-            break;
+    /**
+     * The media with their groups at a grouping mode: none of it changes once built,
+     * a new media list, removal or grouping mode makes a new Timeline.
+     */
+    private static final class Timeline {
+
+        final ArrayList<Media> media;
+        final TimelineIndex index;
+        final GroupingMode groupingMode;
+        final HeaderPositions positions;
+        // built when bound, on the main thread only
+        private final TimelineHeaderModel[] headers;
+        private SectionIndex sections;
+
+        Timeline(@NonNull ArrayList<Media> media, @NonNull TimelineIndex index, @NonNull GroupingMode groupingMode) {
+            this.media = media;
+            this.index = index;
+            this.groupingMode = groupingMode;
+            this.positions = new HeaderPositions(index.getGroupStarts(groupingMode), media.size());
+            this.headers = new TimelineHeaderModel[positions.getGroupCount()];
+        }
+
+        int size() {
+            return positions.getItemCount();
+        }
+
+        @NonNull
+        TimelineHeaderModel getHeader(int group) {
+            if (headers[group] == null) headers[group] = newHeader(group);
+            return headers[group];
+        }
+
+        /**
+         * @return the months of the media, whatever the grouping mode
+         */
+        @NonNull
+        SectionIndex getSections() {
+            if (sections == null) sections = SectionIndex.byMonth(media, index.getGroupStarts(GroupingMode.MONTH));
+            return sections;
+        }
+
+        @NonNull
+        TimelineHeaderModel newHeader(int group) {
+            TimelineHeaderModel timelineHeaderModel = new TimelineHeaderModel(media.get(positions.getGroupStart(group)).getDateModified());
+            timelineHeaderModel.setHeaderText(groupingMode.getGroupHeader(timelineHeaderModel.getDate()));
+            return timelineHeaderModel;
+        }
+    }
+
+    /**
+     * Headers are the same item only when they show the same text, media when they have the same id.
+     */
+    private static final class TimelineDiff extends DiffUtil.Callback {
+
+        private final Timeline oldTimeline, newTimeline;
+        private final String[] oldHeaders, newHeaders;
+
+        TimelineDiff(Timeline oldTimeline, Timeline newTimeline) {
+            this.oldTimeline = oldTimeline;
+            this.newTimeline = newTimeline;
+            // NOTE: new models, the cached ones of the current timeline belong to the main thread
+            this.oldHeaders = headerTexts(oldTimeline);
+            this.newHeaders = headerTexts(newTimeline);
+        }
+
+        private static String[] headerTexts(Timeline timeline) {
+            String[] texts = new String[timeline.positions.getGroupCount()];
+            for (int g = 0; g < texts.length; g++) texts[g] = timeline.newHeader(g).getHeaderText();
+            return texts;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldTimeline.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newTimeline.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            int oldIndex = oldTimeline.positions.toMediaIndex(oldItemPosition);
+            int newIndex = newTimeline.positions.toMediaIndex(newItemPosition);
+            if (oldIndex < 0 || newIndex < 0) {
+                return oldIndex < 0 && newIndex < 0 && TextUtils.equals(
+                        oldHeaders[oldTimeline.positions.getGroup(oldItemPosition)],
+                        newHeaders[newTimeline.positions.getGroup(newItemPosition)]);
+            }
+            return oldTimeline.media.get(oldIndex).getId() == newTimeline.media.get(newIndex).getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            int oldIndex = oldTimeline.positions.toMediaIndex(oldItemPosition);
+            int newIndex = newTimeline.positions.toMediaIndex(newItemPosition);
+            return oldIndex < 0 || oldTimeline.media.get(oldIndex).hasSameContent(newTimeline.media.get(newIndex));
         }
     }
 
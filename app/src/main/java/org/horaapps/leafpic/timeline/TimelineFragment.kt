@@ -5,17 +5,21 @@ import android.content.res.Configuration
 import android.os.Bundle
 import android.support.annotation.IdRes
 import android.support.v7.widget.GridLayoutManager
+import android.support.v7.widget.RecyclerView
 import android.view.*
 import android.widget.Toast
+import com.turingtechnologies.materialscrollbar.CustomIndicator
+import io.reactivex.Observable
 import io.reactivex.android.schedulers.AndroidSchedulers
+import io.reactivex.disposables.Disposable
 import io.reactivex.schedulers.Schedulers
 import kotlinx.android.synthetic.main.fragment_timeline.*
 import org.horaapps.leafpic.R
 import org.horaapps.leafpic.data.Album
 import org.horaapps.leafpic.data.Media
 import org.horaapps.leafpic.data.filter.FilterMode
-import org.horaapps.leafpic.data.filter.MediaFilter
 import org.horaapps.leafpic.data.provider.CPHelper
+import org.horaapps.leafpic.data.provider.MediaRepository
 import org.horaapps.leafpic.data.sort.MediaComparators
 import org.horaapps.leafpic.data.sort.SortingMode
 import org.horaapps.leafpic.data.sort.SortingOrder
@@ -27,6 +31,7 @@ import org.horaapps.leafpic.util.DeviceUtils
 import org.horaapps.leafpic.util.Security
 import org.horaapps.leafpic.util.deleteMedia
 import org.horaapps.leafpic.util.preferences.Defaults
+import org.horaapps.leafpic.util.repairDates
 import org.horaapps.leafpic.util.shareMedia
 import org.horaapps.liz.ThemeHelper
 import org.horaapps.liz.ThemedActivity
@@ -46,6 +51,10 @@ class TimelineFragment : BaseMediaGridFragment(), ActionsListener {
         private const val KEY_ALBUM = "key_album"
         private const val KEY_GROUPING_MODE = "key_grouping_mode"
         private const val KEY_FILTER_MODE = "key_filter_mode"
+        private const val KEY_ON_THIS_DAY = "key_on_this_day"
+
+        // items from the end (or the start) of the loaded months that trigger the next page
+        private const val PAGE_THRESHOLD = 30
 
         fun newInstance(album: Album) = TimelineFragment().apply {
             arguments = Bundle().apply { putParcelable(ARGS_ALBUM, album) }
@@ -60,6 +69,15 @@ class TimelineFragment : BaseMediaGridFragment(), ActionsListener {
 
     private lateinit var groupingMode: GroupingMode
     private lateinit var filterMode: FilterMode
+    // the media taken on this day in the previous years instead of the album, grouped by year
+    private var onThisDay = false
+
+    // the months loaded so far, null when the album is loaded at once
+    private var window: TimelineWindow? = null
+    private var pageLoading: Disposable? = null
+    // the DATE_TAKEN of the oldest and of the newest media of the album, spanned by the scroll bar
+    private var albumRange: LongArray? = null
+    private var rangeLoading: Disposable? = null
 
     private val timelineGridSize: Int
         get() = if (DeviceUtils.isPortrait(resources)) Defaults.TIMELINE_ITEMS_PORTRAIT
@@ -78,6 +96,7 @@ class TimelineFragment : BaseMediaGridFragment(), ActionsListener {
             contentAlbum = it.getParcelable(KEY_ALBUM)
             groupingMode = it.get(KEY_GROUPING_MODE) as GroupingMode
             filterMode = it.get(KEY_FILTER_MODE) as FilterMode
+            onThisDay = it.getBoolean(KEY_ON_THIS_DAY)
             return
         }
 
@@ -98,17 +117,27 @@ class TimelineFragment : BaseMediaGridFragment(), ActionsListener {
     override fun onViewCreated(view: View, savedInstanceState: Bundle?) {
         super.onViewCreated(view, savedInstanceState)
 
-        timeline_swipe_refresh_layout.setOnRefreshListener { this.loadAlbum() }
+        timeline_swipe_refresh_layout.setOnRefreshListener {
+            MediaRepository.invalidate(contentAlbum)
+            loadAlbum()
+        }
         setupRecyclerView()
         loadAlbum()
     }
 
+    override fun onDestroyView() {
+        pageLoading?.dispose()
+        rangeLoading?.dispose()
+        super.onDestroyView()
+    }
+
     override fun onCreateOptionsMenu(menu: Menu, inflater: MenuInflater) {
         super.onCreateOptionsMenu(menu, inflater)
         inflater.inflate(R.menu.menu_timeline, menu)
 
         menu.findItem(getMenuForGroupingMode(groupingMode)).isChecked = true
         menu.findItem(getMenuForFilterMode(filterMode)).isChecked = true
+        menu.findItem(R.id.timeline_menu_on_this_day).isChecked = onThisDay
     }
 
     override fun onPrepareOptionsMenu(menu: Menu?) {
@@ -141,6 +170,11 @@ class TimelineFragment : BaseMediaGridFragment(), ActionsListener {
 
         return when (item.itemId) {
 
+            R.id.timeline_menu_on_this_day -> {
+                setOnThisDay(!onThisDay)
+                true
+            }
+
             R.id.timeline_menu_delete -> {
                 if (Security.isPasswordOnDelete()) {
                     Security.authenticateUser(activity as ThemedActivity?, object : Security.AuthCallBack {
@@ -157,6 +191,11 @@ class TimelineFragment : BaseMediaGridFragment(), ActionsListener {
                 true
             }
 
+            R.id.timeline_menu_fix_dates -> {
+                repairDates()
+                true
+            }
+
             R.id.timeline_share -> {
                 shareMedia(context!!, timelineAdapter.selectedMedia)
                 true
@@ -188,11 +227,25 @@ class TimelineFragment : BaseMediaGridFragment(), ActionsListener {
         })
     }
 
+    private fun repairDates() {
+        repairDates(context!!, timelineAdapter.selectedMedia, childFragmentManager, object : ProgressBottomSheet.Listener<Media> {
+
+            override fun onCompleted() {
+                exitContextMenu()
+                loadAlbum()
+            }
+
+            override fun onProgress(item: Media?) {}
+
+        })
+    }
+
     override fun onSaveInstanceState(outState: Bundle) {
         outState.apply {
             putParcelable(KEY_ALBUM, contentAlbum)
             putSerializable(KEY_GROUPING_MODE, groupingMode)
             putSerializable(KEY_FILTER_MODE, filterMode)
+            putBoolean(KEY_ON_THIS_DAY, onThisDay)
         }
         super.onSaveInstanceState(outState)
     }
@@ -249,14 +302,128 @@ class TimelineFragment : BaseMediaGridFragment(), ActionsListener {
         timelineAdapter.setGridLayoutManager(gridLayoutManager)
         timelineAdapter.setGroupingMode(groupingMode)
         timeline_items.adapter = timelineAdapter
+        timeline_items.addOnScrollListener(object : RecyclerView.OnScrollListener() {
+            override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) = loadNextPage()
+        })
+        // NOTE: the bubble shows the month of the dragged position, see TimelineAdapter.getCustomStringForElement
+        timeline_scroll_bar.setIndicator(CustomIndicator(context), true)
+        timeline_scroll_bar.setOnTouchListener { bar, event -> onScrollBarTouch(bar, event) }
     }
 
+    /**
+     * Load the newest months of the album, the others as the user scrolls, see [TimelineWindow].
+     * NOTE: albums out of the MediaStore are loaded at once
+     */
     private fun loadAlbum() {
+        pageLoading?.dispose()
+        rangeLoading?.dispose()
+        albumRange = null
+        if (onThisDay) {
+            window = null
+            loadPage(CPHelper.getMediaOnThisDay(context, filterMode)) { timeline_swipe_refresh_layout!!.isRefreshing = false; setAdapterMedia(it) }
+            return
+        }
+        if (contentAlbum.id == -1L) {
+            window = null
+            loadWholeAlbum()
+            return
+        }
+
+        val window = TimelineWindow(context!!, contentAlbum, filterMode)
+        this.window = window
+        loadPage(window.around()) { timeline_swipe_refresh_layout!!.isRefreshing = false; setAdapterMedia(it) }
+        rangeLoading = window.range()
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe({ albumRange = it }, { _ -> })
+    }
+
+    /**
+     * Switch between the album and the media taken on this day in the previous years, one group per year.
+     */
+    private fun setOnThisDay(onThisDay: Boolean) {
+        this.onThisDay = onThisDay
+        if (onThisDay) {
+            groupingMode = GroupingMode.YEAR
+            timelineAdapter.setGroupingMode(groupingMode)
+        }
+        updateToolbar()
+        loadAlbum()
+    }
+
+    /**
+     * Load the next month when the user gets close to either end of the loaded ones.
+     */
+    private fun loadNextPage() {
+        val window = window ?: return
+        if (pageLoading?.isDisposed == false) return
+
+        if (window.hasOlder() && gridLayoutManager.findLastVisibleItemPosition() >= timelineAdapter.itemCount - PAGE_THRESHOLD)
+            loadPage(window.older()) { sortByDate(it); timelineAdapter.appendMedia(it) }
+        else if (window.hasNewer() && gridLayoutManager.findFirstVisibleItemPosition() in 0 until PAGE_THRESHOLD)
+            loadPage(window.newer()) { page -> timelineAdapter.media?.let { page.addAll(it) }; setAdapterMedia(page) }
+    }
+
+    /**
+     * While some months are not loaded the scroll bar spans the dates of the whole album instead of
+     * the loaded media: releasing it loads only the month of the date under the finger with the ones
+     * next to it, see [jumpTo]. Once every month is loaded the scroll bar handles the touch itself.
+     */
+    private fun onScrollBarTouch(bar: View, event: MotionEvent): Boolean {
+        val window = window
+        val range = albumRange
+        if (window == null || range == null || !window.hasOlder() && !window.hasNewer()) {
+            // the scroll bar handles the drag, the month of the bubble is shown from its start
+            if (event.actionMasked == MotionEvent.ACTION_UP) snapToMonth()
+            return false
+        }
+
+        if (event.actionMasked == MotionEvent.ACTION_UP && bar.height > 0) {
+            val fraction = (event.y / bar.height).coerceIn(0f, 1f)
+            jumpTo(range[1] - (fraction * (range[1] - range[0])).toLong())
+        }
+        return true
+    }
+
+    /**
+     * Scroll to the media taken on the date, loading its month and the ones next to it if needed.
+     */
+    private fun jumpTo(date: Long) {
+        val window = window ?: return
+        if (window.contains(date)) {
+            scrollTo(date)
+            return
+        }
+
+        pageLoading?.dispose()
+        val jump = TimelineWindow(context!!, contentAlbum, filterMode, date)
+        this.window = jump
+        loadPage(jump.around()) { sortByDate(it); timelineAdapter.setMedia(it) { scrollTo(date) } }
+    }
+
+    private fun snapToMonth() {
+        val first = gridLayoutManager.findFirstVisibleItemPosition()
+        if (first != RecyclerView.NO_POSITION)
+            gridLayoutManager.scrollToPositionWithOffset(timelineAdapter.getSectionStart(first), 0)
+    }
+
+    private fun scrollTo(date: Long) = gridLayoutManager.scrollToPositionWithOffset(timelineAdapter.getPositionOf(date), 0)
+
+    private fun loadPage(page: Observable<Media>, onLoaded: (ArrayList<Media>) -> Unit) {
+        pageLoading = page
+                .toList()
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        { onLoaded(ArrayList(it)) },
+                        { _ -> timeline_swipe_refresh_layout!!.isRefreshing = false })
+    }
+
+    private fun loadWholeAlbum() {
         val mediaList = ArrayList<Media>()
-        CPHelper.getMedia(context, contentAlbum)
+        pageLoading = MediaRepository.getMedia(context, contentAlbum, filterMode)
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
-                .filter { media -> MediaFilter.getFilter(filterMode).accept(media) }
                 .subscribe(
                         { mediaList.add(it) },
                         { _ -> timeline_swipe_refresh_layout!!.isRefreshing = false },
@@ -268,10 +435,17 @@ class TimelineFragment : BaseMediaGridFragment(), ActionsListener {
     }
 
     private fun setAdapterMedia(mediaList: ArrayList<Media>) {
-        Collections.sort(mediaList, MediaComparators.getComparator(SortingMode.DATE, SortingOrder.DESCENDING))
+        sortByDate(mediaList)
         timelineAdapter.media = mediaList
     }
 
+    /**
+     * NOTE: pages come sorted by DATE_TAKEN, the dates of the ExifIndex can differ from it
+     */
+    private fun sortByDate(mediaList: ArrayList<Media>) {
+        Collections.sort(mediaList, MediaComparators.getComparator(SortingMode.DATE, SortingOrder.DESCENDING))
+    }
+
     override fun editMode() = timelineAdapter.isSelecting
 
     override fun clearSelected() = timelineAdapter.clearSelected()
@@ -300,8 +474,9 @@ class TimelineFragment : BaseMediaGridFragment(), ActionsListener {
         false -> null
     }
 
-    override fun getToolbarTitle() = when (editMode()) {
-        true -> null
-        false -> getString(R.string.timeline_toolbar_title)
+    override fun getToolbarTitle() = when {
+        editMode() -> null
+        onThisDay -> getString(R.string.timeline_on_this_day)
+        else -> getString(R.string.timeline_toolbar_title)
     }
 }
@@ -0,0 +1,113 @@
+package org.horaapps.leafpic.timeline;
+
+import android.support.annotation.NonNull;
+
+import org.horaapps.leafpic.data.Media;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+
+/**
+ * Groups of a list of media (sorted by date) at every {@link GroupingMode}, built once.
+ * <p>
+ * The media are split in runs of the same day, then the runs are merged in weeks, months and
+ * years looking only at their epoch-day. Every level keeps the prefix sums of the sizes of its
+ * groups, i.e. the index of the first media of each group: the header of group g sits at g + starts[g]
+ * in the timeline.
+ * <p>
+ * The levels nest: a week never crosses a month (weeks are counted within the month), so the
+ * starts of a coarser level are a subset of the ones of a finer level, and switching level only
+ * adds or drops headers.
+ */
+public final class TimelineIndex {
+
+    private final int size;
+    private final EnumMap<GroupingMode, int[]> starts = new EnumMap<>(GroupingMode.class);
+
+    public TimelineIndex(@NonNull List<Media> media) {
+        this(media, new DateBuckets());
+    }
+
+    public TimelineIndex(@NonNull List<Media> media, @NonNull DateBuckets dateBuckets) {
+        size = media.size();
+
+        // runs of the same day, the only pass over the media
+        int[] dayStarts = new int[16];
+        int[] days = new int[16];
+        int runs = 0;
+        for (int i = 0; i < size; i++) {
+            int day = dateBuckets.epochDay(media.get(i).getDateModified());
+            if (runs == 0 || day != days[runs - 1]) {
+                if (runs == days.length) {
+                    days = Arrays.copyOf(days, runs * 2);
+                    dayStarts = Arrays.copyOf(dayStarts, runs * 2);
+                }
+                days[runs] = day;
+                dayStarts[runs] = i;
+                runs++;
+            }
+        }
+        starts.put(GroupingMode.DAY, Arrays.copyOf(dayStarts, runs));
+
+        for (GroupingMode level : new GroupingMode[]{GroupingMode.WEEK, GroupingMode.MONTH, GroupingMode.YEAR}) {
+            int[] levelStarts = new int[runs];
+            int groups = 0, last = 0;
+            for (int r = 0; r < runs; r++) {
+                int bucket = dateBuckets.bucketOf(level, days[r]);
+                if (r == 0 || bucket != last) levelStarts[groups++] = dayStarts[r];
+                last = bucket;
+            }
+            starts.put(level, Arrays.copyOf(levelStarts, groups));
+        }
+    }
+
+    private TimelineIndex(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Index of the same media without the ones at the removed indexes, from the starts alone:
+     * every start moves back by the removed media before it and the groups left empty are dropped.
+     *
+     * @param removed the indexes of the removed media, ascending
+     */
+    @NonNull
+    public TimelineIndex withRemoved(@NonNull int[] removed) {
+        TimelineIndex index = new TimelineIndex(size - removed.length);
+        for (GroupingMode level : GroupingMode.values()) {
+            int[] levelStarts = starts.get(level);
+            int[] newStarts = new int[levelStarts.length];
+            int groups = 0, r = 0;
+            for (int g = 0; g < levelStarts.length; g++) {
+                int start = levelStarts[g];
+                int end = g + 1 < levelStarts.length ? levelStarts[g + 1] : size;
+                while (r < removed.length && removed[r] < start) r++;
+                int removedBefore = r;
+                while (r < removed.length && removed[r] < end) r++;
+                if (r - removedBefore < end - start) newStarts[groups++] = start - removedBefore;
+            }
+            index.starts.put(level, Arrays.copyOf(newStarts, groups));
+        }
+        return index;
+    }
+
+    /**
+     * @return the number of media indexed
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the index of the first media of each group, ascending; do not modify it
+     */
+    @NonNull
+    public int[] getGroupStarts(@NonNull GroupingMode groupingMode) {
+        return starts.get(groupingMode);
+    }
+
+    public int getGroupCount(@NonNull GroupingMode groupingMode) {
+        return starts.get(groupingMode).length;
+    }
+}
@@ -0,0 +1,162 @@
+package org.horaapps.leafpic.timeline;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import org.horaapps.leafpic.data.Album;
+import org.horaapps.leafpic.data.Media;
+import org.horaapps.leafpic.data.filter.FilterMode;
+import org.horaapps.leafpic.data.provider.CPHelper;
+import org.horaapps.leafpic.data.sort.SortingOrder;
+
+import java.util.Calendar;
+
+import io.reactivex.Observable;
+
+/**
+ * The months of an album loaded in the Timeline: instead of the whole album only the month of a
+ * date (the newest one at first) and the ones next to it are queried, the others as the user
+ * scrolls to them.
+ * <p>
+ * Each page is a whole month with media, newest first: a probe with LIMIT 1 finds the next
+ * DATE_TAKEN, then its month is queried with a DATE_TAKEN range, so empty months cost nothing.
+ * The probe reads the raw DATE_TAKEN, not the date of the {@link org.horaapps.leafpic.data.provider.ExifIndex}:
+ * the month must be the one of the range that was queried.
+ * The window [oldest, newest) only grows, a page at a time: its bounds move before the page is emitted.
+ * NOTE: only for albums of the MediaStore; the pages are loaded on a background thread, the bounds
+ * are read on the main one
+ */
+public final class TimelineWindow {
+
+    private final Context context;
+    private final Album album;
+    private final FilterMode filterMode;
+
+    private volatile long oldest, newest;
+    private volatile boolean hasOlder = true, hasNewer;
+
+    /**
+     * A window from the newest media.
+     */
+    public TimelineWindow(@NonNull Context context, @NonNull Album album, @NonNull FilterMode filterMode) {
+        this(context, album, filterMode, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param date the month to start from, Long.MAX_VALUE for the newest media
+     */
+    public TimelineWindow(@NonNull Context context, @NonNull Album album, @NonNull FilterMode filterMode, long date) {
+        this.context = context.getApplicationContext();
+        this.album = album;
+        this.filterMode = filterMode;
+
+        hasNewer = date != Long.MAX_VALUE;
+        oldest = newest = hasNewer ? monthAfter(date) : Long.MAX_VALUE;
+    }
+
+    public boolean hasOlder() {
+        return hasOlder;
+    }
+
+    public boolean hasNewer() {
+        return hasNewer;
+    }
+
+    /**
+     * @return true if the media taken on the date are loaded, or there are none
+     */
+    public boolean contains(long date) {
+        return (date >= oldest || !hasOlder) && (date < newest || !hasNewer);
+    }
+
+    /**
+     * The first pages: the month of the date (or the newest one before it) with the ones next to it.
+     */
+    @NonNull
+    public Observable<Media> around() {
+        return Observable.concat(newer(), older(), older());
+    }
+
+    /**
+     * The month of the newest media older than the window.
+     */
+    @NonNull
+    public Observable<Media> older() {
+        return Observable.defer(() -> {
+            if (!hasOlder) return Observable.empty();
+            long before = oldest;
+
+            return CPHelper.getFirstDateTakenBetween(context, album, filterMode, Long.MIN_VALUE, before - 1, SortingOrder.DESCENDING)
+                    .toList()
+                    .flatMapObservable(probe -> {
+                        if (probe.isEmpty()) {
+                            hasOlder = false;
+                            return Observable.empty();
+                        }
+                        // NOTE: each step moves the bound strictly, a probe can never stall the window
+                        long month = Math.min(monthOf(probe.get(0)), before - 1);
+                        oldest = month;
+                        return CPHelper.getMediaTakenBetween(context, album, filterMode, month, before - 1, SortingOrder.DESCENDING, -1);
+                    });
+        });
+    }
+
+    /**
+     * The month of the oldest media newer than the window.
+     */
+    @NonNull
+    public Observable<Media> newer() {
+        return Observable.defer(() -> {
+            if (!hasNewer) return Observable.empty();
+            long after = newest;
+
+            return CPHelper.getFirstDateTakenBetween(context, album, filterMode, after, Long.MAX_VALUE, SortingOrder.ASCENDING)
+                    .toList()
+                    .flatMapObservable(probe -> {
+                        if (probe.isEmpty()) {
+                            hasNewer = false;
+                            return Observable.empty();
+                        }
+                        long month = Math.max(monthAfter(probe.get(0)), after + 1);
+                        newest = month;
+                        return CPHelper.getMediaTakenBetween(context, album, filterMode, after, month - 1, SortingOrder.DESCENDING, -1);
+                    });
+        });
+    }
+
+    /**
+     * @return the DATE_TAKEN of the oldest and of the newest media of the album, nothing if it is empty
+     * NOTE: the media without a DATE_TAKEN would stretch the range back to 1970, they are left out
+     */
+    @NonNull
+    public Observable<long[]> range() {
+        return Observable.zip(
+                CPHelper.getFirstDateTakenBetween(context, album, filterMode, 1, Long.MAX_VALUE, SortingOrder.ASCENDING),
+                CPHelper.getFirstDateTakenBetween(context, album, filterMode, 1, Long.MAX_VALUE, SortingOrder.DESCENDING),
+                (oldest, newest) -> new long[]{oldest, newest});
+    }
+
+    /**
+     * @return the start of the month of the date, in the local time zone
+     */
+    private static long monthOf(long date) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(date);
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * @return the start of the month after the one of the date
+     */
+    private static long monthAfter(long date) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(monthOf(date));
+        calendar.add(Calendar.MONTH, 1);
+        return calendar.getTimeInMillis();
+    }
+}
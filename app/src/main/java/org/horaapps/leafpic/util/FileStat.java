@@ -0,0 +1,69 @@
+package org.horaapps.leafpic.util;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Type, last modified date and size of a file, read with as few syscalls as possible.
+ * <p>
+ * On Oreo and above all of them come from a single stat through java.nio,
+ * on older versions we fall back to {@link File}, which needs one call for each.
+ */
+public final class FileStat {
+
+    private final boolean regularFile;
+    private final long lastModified;
+    private final long size;
+
+    private FileStat(boolean regularFile, long lastModified, long size) {
+        this.regularFile = regularFile;
+        this.lastModified = lastModified;
+        this.size = size;
+    }
+
+    /**
+     * @return null if the file does not exist or can not be read
+     */
+    @Nullable
+    public static FileStat of(@NonNull File file) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
+            return readAttributes(file);
+
+        long lastModified = file.lastModified();
+        if (lastModified == 0) return null;
+        return new FileStat(true, lastModified, file.length());
+    }
+
+    @Nullable
+    @TargetApi(Build.VERSION_CODES.O)
+    private static FileStat readAttributes(File file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            return new FileStat(attributes.isRegularFile(), attributes.lastModifiedTime().toMillis(), attributes.size());
+        } catch (IOException | SecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * NOTE: before Oreo this is always true, the media extension is trusted instead.
+     */
+    public boolean isRegularFile() {
+        return regularFile;
+    }
+
+    public long lastModified() {
+        return lastModified;
+    }
+
+    public long size() {
+        return size;
+    }
+}
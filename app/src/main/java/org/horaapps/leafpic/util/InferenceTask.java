@@ -39,10 +39,8 @@ public class InferenceTask extends AsyncTask<Void, Void, String[]> {
         // get indices of selected media
         // relative to all media
         selectedIndices = new ArrayList<>();
-        ArrayList<Media> allMedia = adapterRef.get().getMedia();
-        for (int i = 0; i < allMedia.size(); i++)
-            if (allMedia.get(i).isSelected())
-                selectedIndices.add(i);
+        for (int i : adapterRef.get().getSelectedPositions())
+            selectedIndices.add(i);
     }
 
     protected String[] doInBackground(Void... voids) {
@@ -107,10 +105,8 @@ public class InferenceTask extends AsyncTask<Void, Void, String[]> {
     protected void onPostExecute(String[] result) {
         // deselect the true negatives
         for (int i = 0; i < media.size(); i++) {
-            if (result[i].contains("grille")) {
-                media.get(i).setSelected(false);
-                adapterRef.get().notifyItemChanged(selectedIndices.get(i));
-            }
+            if (result[i].contains("grille"))
+                adapterRef.get().deselect(selectedIndices.get(i));
         }
         adapterRef.get().invalidateSelectedCount();
 
@@ -66,3 +66,17 @@ fun deleteMedia(context: Context, mediaList: List<Media>, fragmentManager: Fragm
 
     bottomSheet.showNow(fragmentManager, null)
 }
+
+/**
+ * Set the dates of the given Media to the ones in their EXIF, see [MediaHelper.repairDates].
+ */
+fun repairDates(context: Context, mediaList: List<Media>, fragmentManager: FragmentManager, listener: ProgressBottomSheet.Listener<Media>) {
+    val bottomSheet = ProgressBottomSheet.Builder<Media>(R.string.repair_dates_bottom_sheet_title)
+            .autoDismiss(false)
+            .sources(MediaHelper.repairDates(context.applicationContext, mediaList))
+            .count(mediaList.size)
+            .listener(listener)
+            .build()
+
+    bottomSheet.showNow(fragmentManager, null)
+}
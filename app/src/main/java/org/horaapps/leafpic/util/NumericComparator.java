@@ -18,8 +18,12 @@
 
 package org.horaapps.leafpic.util;
 
+import android.support.annotation.NonNull;
+
 /** Copied from GNU coreutils-8.23/lib/filevercmp.c
- *  Java implementation is highly inefficient, because it copies strings symbol by symbol. */
+ *  The Java port works on char positions of the original strings, no substring is ever made.
+ *  For repeated sorts {@link Key} keeps the per string part of the work, so that comparing
+ *  two keys only walks the version parts. */
 public class NumericComparator {
 
   public static final String TAG = "NumericComparator";
@@ -39,82 +43,140 @@ public class NumericComparator {
    *  PREFIX VER2 SUFFIX) < 0.
    *  This function is intended to be a replacement for strverscmp. */
   public static int filevercmp (String s1, String s2) {
-    String s1_suffix, s2_suffix;
-    int s1_len, s2_len, result;
-
     /** easy comparison to see if strings are identical */
-    int simple_cmp = strcmp (s1, s2);
+    int simple_cmp = s1.compareTo (s2);
     if (simple_cmp == 0)
       return 0;
 
-    /** special handle for "", "." and ".." */
-    if (s1 == null || s1.length() == 0)
-      return -1;
-    if (s2 == null || s2.length() == 0)
-      return 1;
-    if (0 == strcmp (".", s1))
-      return -1;
-    if (0 == strcmp (".", s2))
-      return 1;
-    if (0 == strcmp ("..", s1))
-      return -1;
-    if (0 == strcmp ("..", s2))
-      return 1;
+    int special = compareSpecial (special (s1), special (s2));
+    if (special != 0)
+      return special;
 
     /** special handle for other hidden files */
-    if (s1.codePointAt(0) == '.' && s2.codePointAt(0) != '.')
+    int s1_start = 0, s2_start = 0;
+    if (s1.charAt(0) == '.' && s2.charAt(0) != '.')
       return -1;
-    if (s1.codePointAt(0) != '.' && s2.codePointAt(0) == '.')
+    if (s1.charAt(0) != '.' && s2.charAt(0) == '.')
       return 1;
-    if (s1.codePointAt(0) == '.' && s2.codePointAt(0) == '.') {
-      s1 = s1.substring(1, s1.length());
-      s2 = s2.substring(1, s2.length());
+    if (s1.charAt(0) == '.' && s2.charAt(0) == '.') {
+      s1_start = 1;
+      s2_start = 1;
     }
 
     /** "cut" file suffixes */
-    s1_suffix = match_suffix (s1);
-    s2_suffix = match_suffix (s2);
-    s1_len = s1.length() - s1_suffix.length();
-    s2_len = s2.length() - s2_suffix.length();
+    int s1_end = match_suffix (s1, s1_start);
+    int s2_end = match_suffix (s2, s2_start);
+
+    return compareVersions (s1, s1_start, s1_end, s2, s2_start, s2_end, simple_cmp);
+  }
+
+  /** Compare two precomputed keys, same result of filevercmp on their strings. */
+  public static int compare (@NonNull Key k1, @NonNull Key k2) {
+    int simple_cmp = k1.str.compareTo (k2.str);
+    if (simple_cmp == 0)
+      return 0;
+
+    int special = compareSpecial (k1.special, k2.special);
+    if (special != 0)
+      return special;
+
+    if (k1.hidden != k2.hidden)
+      return k1.hidden ? -1 : 1;
+
+    return compareVersions (k1.str, k1.start, k1.suffix, k2.str, k2.start, k2.suffix, simple_cmp);
+  }
+
+  /** The part of filevercmp that depends on a single string, computed once. */
+  public static final class Key {
+    private final String str;
+    private final int special;
+    private final boolean hidden;
+    private final int start;
+    private final int suffix;
+
+    public Key (@NonNull String str) {
+      this.str = str;
+      this.special = special (str);
+      this.hidden = str.length() > 0 && str.charAt(0) == '.';
+      this.start = hidden ? 1 : 0;
+      this.suffix = special == 0 ? match_suffix (str, start) : str.length();
+    }
+
+    public String getString () {
+      return str;
+    }
+  }
+
+  /** Versions of S1 [s1_start, s1_end) and S2 [s2_start, s2_end), where the ends are
+   *  the start of the file suffixes. */
+  private static int compareVersions (String s1, int s1_start, int s1_end,
+                                      String s2, int s2_start, int s2_end, int simple_cmp) {
+    int s1_len = s1_end - s1_start;
+    int s2_len = s2_end - s2_start;
 
     /** restore file suffixes if strings are identical after "cut" */
-    if ((s1_suffix.length() > 0 || s2_suffix.length() > 0) && (s1_len == s2_len) && 0 == strncmp (s1, s2, s1_len)) {
-      s1_len = s1.length();
-      s2_len = s2.length();
+    if ((s1_end < s1.length() || s2_end < s2.length()) && (s1_len == s2_len)
+        && s1.regionMatches (s1_start, s2, s2_start, s1_len)) {
+      s1_end = s1.length();
+      s2_end = s2.length();
     }
 
-    result = verrevcmp (s1.substring(0, s1_len), s2.substring(0, s2_len));
+    int result = verrevcmp (s1, s1_start, s1_end, s2, s2_start, s2_end);
     return result == 0 ? simple_cmp : result;
   }
 
+  /** special handle for "", "." and "..": they come first, in this order */
+  private static int special (String s) {
+    if (s.length() == 0)
+      return 1;
+    if (s.equals ("."))
+      return 2;
+    if (s.equals (".."))
+      return 3;
+    return 0;
+  }
+
+  private static int compareSpecial (int s1_special, int s2_special) {
+    if (s1_special == 0 && s2_special == 0)
+      return 0;
+    /** only called on different strings, so they can not be both the same special one */
+    if (s1_special == 0)
+      return 1;
+    if (s2_special == 0)
+      return -1;
+    return s1_special < s2_special ? -1 : 1;
+  }
+
+  public static int verrevcmp (String s1, String s2) {
+    return verrevcmp (s1, 0, s1.length(), s2, 0, s2.length());
+  }
+
   /** slightly modified verrevcmp function from dpkg
    *  S1, S2 - compared string
-   *  S1_LEN, S2_LEN - length of strings to be scanned
+   *  [S1_POS, S1_END), [S2_POS, S2_END) - ranges of the strings to be scanned
    *  This implements the algorithm for comparison of version strings
    *  specified by Debian and now widely adopted.  The detailed
    *  specification can be found in the Debian Policy Manual in the
    *  section on the 'Version' control field.  This version of the code
    *  implements that from s5.6.12 of Debian Policy v3.8.0.1
    *  http://www.debian.org/doc/debian-policy/ch-controlfields.html#s-f-Version */
-  public static int verrevcmp (String s1, String s2) {
-    int s1_pos = 0;
-    int s2_pos = 0;
-    while (s1_pos < s1.length() || s2_pos < s2.length()) {
+  private static int verrevcmp (String s1, int s1_pos, int s1_end, String s2, int s2_pos, int s2_end) {
+    while (s1_pos < s1_end || s2_pos < s2_end) {
       int first_diff = 0;
-      while ((s1_pos < s1.length() && !c_isdigit (s1.codePointAt(s1_pos)))
-             || (s2_pos < s2.length() && !c_isdigit (s2.codePointAt(s2_pos)))) {
-        int s1_c = (s1_pos >= s1.length()) ? 0 : order (s1.codePointAt(s1_pos));
-        int s2_c = (s2_pos >= s2.length()) ? 0 : order (s2.codePointAt(s2_pos));
+      while ((s1_pos < s1_end && !c_isdigit (s1.codePointAt(s1_pos)))
+             || (s2_pos < s2_end && !c_isdigit (s2.codePointAt(s2_pos)))) {
+        int s1_c = (s1_pos >= s1_end) ? 0 : order (s1.codePointAt(s1_pos));
+        int s2_c = (s2_pos >= s2_end) ? 0 : order (s2.codePointAt(s2_pos));
         if (s1_c != s2_c)
           return s1_c - s2_c;
         s1_pos++;
         s2_pos++;
       }
-      while (s1_pos < s1.length() && s1.codePointAt(s1_pos) == '0')
+      while (s1_pos < s1_end && s1.charAt(s1_pos) == '0')
         s1_pos++;
-      while (s2_pos < s2.length() && s2.codePointAt(s2_pos) == '0')
+      while (s2_pos < s2_end && s2.charAt(s2_pos) == '0')
         s2_pos++;
-      while (s1_pos < s1.length() && s2_pos < s2.length()
+      while (s1_pos < s1_end && s2_pos < s2_end
              && c_isdigit (s1.codePointAt(s1_pos))
              && c_isdigit (s2.codePointAt(s2_pos))) {
         if (first_diff == 0)
@@ -122,9 +184,9 @@ public class NumericComparator {
         s1_pos++;
         s2_pos++;
       }
-      if (s1_pos < s1.length() && c_isdigit (s1.codePointAt(s1_pos)))
+      if (s1_pos < s1_end && c_isdigit (s1.codePointAt(s1_pos)))
         return 1;
-      if (s2_pos < s2.length() && c_isdigit (s2.codePointAt(s2_pos)))
+      if (s2_pos < s2_end && c_isdigit (s2.codePointAt(s2_pos)))
         return -1;
       if (first_diff != 0)
         return first_diff;
@@ -149,40 +211,26 @@ public class NumericComparator {
 
   /** Match a file suffix defined by this regular expression:
    *  /(\.[A-Za-z~][A-Za-z0-9~]*)*$/
-   *  Returns empty string if not found. */
-  private static String match_suffix (String str)
+   *  Returns the position where the suffix starts, the length of the string if not found. */
+  private static int match_suffix (String str, int from)
   {
-    String match = "";
+    int match = -1;
     boolean read_alpha = false;
-    while (str.length() > 0) {
+    for (int pos = from, len = str.length(); pos < len; pos++) {
+      int c = str.codePointAt(pos);
       if (read_alpha) {
         read_alpha = false;
-        if (!c_isalpha (str.codePointAt(0)) && '~' != str.codePointAt(0))
-          match = "";
-      } else if ('.' == str.codePointAt(0)) {
+        if (!c_isalpha (c) && '~' != c)
+          match = -1;
+      } else if ('.' == c) {
         read_alpha = true;
-        if (match.length() == 0)
-          match = str;
-      } else if (!c_isalnum (str.codePointAt(0)) && '~' != str.codePointAt(0)) {
-        match = "";
+        if (match == -1)
+          match = pos;
+      } else if (!c_isalnum (c) && '~' != c) {
+        match = -1;
       }
-      str = str.substring(1, str.length());
     }
-    return match;
-  }
-
-  /** The strcmp() function compares the two strings s1 and s2.
-   *  It returns an integer less than, equal to, or greater than zero if s1 is found,
-   *  respectively, to be less than, to match, or be greater than s2. */
-  private static int strcmp(final String s1, final String s2) {
-    return s1.compareTo(s2);
-  }
-
-  /** The strncmp() function is similar to strcmp(), except it compares the only first (at most) n bytes of s1 and s2. */
-  private static int strncmp(final String s1, final String s2, int len) {
-    int len1 = Math.min(len, s1.length());
-    int len2 = Math.min(len, s2.length());
-    return s1.substring(0, len1).compareTo(s2.substring(0, len2));
+    return match == -1 ? str.length() : match;
   }
 
   private static boolean c_isdigit(int c) {
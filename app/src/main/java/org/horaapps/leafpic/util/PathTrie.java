@@ -0,0 +1,167 @@
+package org.horaapps.leafpic.util;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * Compressed trie of folder paths, split on path segments.
+ * <p>
+ * Chains of folders with a single child are collapsed in a single edge, so a lookup
+ * costs O(depth of the path) no matter how many folders are stored.
+ * Matching is segment aware: "/sdcard/DCIM" contains "/sdcard/DCIM/Camera"
+ * but not "/sdcard/DCIM2".
+ */
+public final class PathTrie {
+
+    private static final class Node {
+        String[] label;
+        boolean terminal;
+        HashMap<String, Node> children;
+
+        Node(String[] label, boolean terminal) {
+            this.label = label;
+            this.terminal = terminal;
+        }
+
+        void put(Node child) {
+            if (children == null) children = new HashMap<>(4);
+            children.put(child.label[0], child);
+        }
+
+        int commonPrefix(String[] segments, int from) {
+            int i = 0;
+            while (i < label.length && from + i < segments.length && label[i].equals(segments[from + i]))
+                i++;
+            return i;
+        }
+    }
+
+    private final Node root = new Node(new String[0], false);
+    private int size = 0;
+
+    public PathTrie() {
+    }
+
+    public PathTrie(@NonNull Collection<String> paths) {
+        for (String path : paths) add(path);
+    }
+
+    /**
+     * Add a folder to the trie.
+     *
+     * @return true if the folder was not already there
+     */
+    public boolean add(@NonNull String path) {
+        String[] segments = split(path);
+        Node node = root;
+        int i = 0;
+
+        while (i < segments.length) {
+            Node child = node.children != null ? node.children.get(segments[i]) : null;
+            if (child == null) {
+                node.put(new Node(Arrays.copyOfRange(segments, i, segments.length), true));
+                size++;
+                return true;
+            }
+
+            int common = child.commonPrefix(segments, i);
+            if (common < child.label.length) {
+                // split the edge where the new path diverges
+                Node middle = new Node(Arrays.copyOfRange(child.label, 0, common), false);
+                child.label = Arrays.copyOfRange(child.label, common, child.label.length);
+                middle.put(child);
+                node.put(middle);
+                child = middle;
+            }
+            i += common;
+            node = child;
+        }
+
+        if (node.terminal) return false;
+        node.terminal = true;
+        size++;
+        return true;
+    }
+
+    /**
+     * Get the depth (in path segments) of the deepest stored folder that is the given path
+     * or one of its parents.
+     *
+     * @return the depth of the match, -1 if no stored folder contains the path
+     */
+    public int match(@NonNull String path) {
+        int best = root.terminal ? 0 : -1;
+        int depth = 0;
+        int len = path.length();
+        int pos = skipSeparators(path, 0);
+        Node node = root;
+
+        while (pos < len && node.children != null) {
+            int end = segmentEnd(path, pos);
+            Node child = node.children.get(path.substring(pos, end));
+            if (child == null) break;
+
+            // the first segment is matched by the map key, check the rest of the edge
+            int k = 1;
+            pos = skipSeparators(path, end);
+            while (k < child.label.length && pos < len) {
+                String segment = child.label[k];
+                end = segmentEnd(path, pos);
+                if (end - pos != segment.length() || !path.regionMatches(pos, segment, 0, segment.length()))
+                    break;
+                pos = skipSeparators(path, end);
+                k++;
+            }
+            if (k < child.label.length) break;
+
+            depth += child.label.length;
+            node = child;
+            if (node.terminal) best = depth;
+        }
+        return best;
+    }
+
+    /**
+     * @return true if the path is one of the stored folders or is inside one of them
+     */
+    public boolean containsPrefixOf(@NonNull String path) {
+        return match(path) != -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private static String[] split(String path) {
+        int count = 0;
+        int len = path.length();
+        for (int pos = skipSeparators(path, 0); pos < len; pos = skipSeparators(path, segmentEnd(path, pos)))
+            count++;
+
+        String[] segments = new String[count];
+        int i = 0;
+        for (int pos = skipSeparators(path, 0); pos < len; ) {
+            int end = segmentEnd(path, pos);
+            segments[i++] = path.substring(pos, end);
+            pos = skipSeparators(path, end);
+        }
+        return segments;
+    }
+
+    private static int skipSeparators(String path, int pos) {
+        while (pos < path.length() && path.charAt(pos) == '/') pos++;
+        return pos;
+    }
+
+    private static int segmentEnd(String path, int pos) {
+        int end = path.indexOf('/', pos);
+        return end == -1 ? path.length() : end;
+    }
+}
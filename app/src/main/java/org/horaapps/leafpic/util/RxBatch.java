@@ -0,0 +1,40 @@
+package org.horaapps.leafpic.util;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.ObservableTransformer;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Group a stream of items in sorted chunks before handing them to the main thread.
+ * <p>
+ * A chunk is closed every {@link #CHUNK_TIMESPAN_MS} or as soon as it holds {@link #CHUNK_SIZE}
+ * items, whatever comes first, so the first items still show up quickly while a big album
+ * costs the main thread a handful of merges instead of one insertion per item.
+ */
+public final class RxBatch {
+
+    private static final int CHUNK_SIZE = 500;
+    private static final long CHUNK_TIMESPAN_MS = 120;
+
+    private RxBatch() {
+    }
+
+    /**
+     * NOTE: chunks are sorted on a background thread, apply this before observeOn(mainThread)
+     */
+    public static <T> ObservableTransformer<T, List<T>> sortedChunks(@NonNull Comparator<? super T> comparator) {
+        return upstream -> upstream
+                .buffer(CHUNK_TIMESPAN_MS, TimeUnit.MILLISECONDS, Schedulers.computation(), CHUNK_SIZE)
+                .filter(chunk -> !chunk.isEmpty())
+                .map(chunk -> {
+                    Collections.sort(chunk, comparator);
+                    return chunk;
+                });
+    }
+}
@@ -0,0 +1,64 @@
+package org.horaapps.leafpic.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Micro-benchmark of the NUMERIC sorting on the JVM: the same camera paths sorted with
+ * {@link LegacyNumericComparator}, with {@link NumericComparator#filevercmp(String, String)} and
+ * with precomputed {@link NumericComparator.Key}s, as MediaSorter does.
+ * <p>
+ * Not a test: run its main from the IDE, on the test classpath, with the count of paths as argument.
+ * NOTE: a desktop JIT, the numbers only compare the implementations with each other
+ */
+public class NumericComparatorBenchmark {
+
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        List<String> paths = paths(count);
+
+        for (int run = 0; run < RUNS; run++) {
+            long legacy = time(() -> {
+                ArrayList<String> list = new ArrayList<>(paths);
+                Collections.sort(list, LegacyNumericComparator::filevercmp);
+            });
+            long inPlace = time(() -> {
+                ArrayList<String> list = new ArrayList<>(paths);
+                Collections.sort(list, NumericComparator::filevercmp);
+            });
+            long withKeys = time(() -> {
+                NumericComparator.Key[] keys = new NumericComparator.Key[paths.size()];
+                for (int i = 0; i < keys.length; i++) keys[i] = new NumericComparator.Key(paths.get(i));
+                Arrays.sort(keys, NumericComparator::compare);
+            });
+            System.out.printf("run %d, %d paths: legacy %d ms, in place %d ms, keys %d ms%n",
+                    run + 1, count, legacy, inPlace, withKeys);
+        }
+    }
+
+    /**
+     * Paths like the ones of a camera folder, in random order.
+     */
+    private static List<String> paths(int count) {
+        Random random = new Random(50);
+        ArrayList<String> paths = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String folder = random.nextInt(10) == 0 ? "Screenshots/Screenshot_" : "Camera/IMG_";
+            paths.add(String.format("/storage/emulated/0/DCIM/%s%04d%02d%02d_%06d%s",
+                    folder, 2012 + random.nextInt(8), 1 + random.nextInt(12), 1 + random.nextInt(28),
+                    random.nextInt(240000), random.nextInt(5) == 0 ? ".mp4" : ".jpg"));
+        }
+        return paths;
+    }
+
+    private static long time(Runnable runnable) {
+        long start = System.nanoTime();
+        runnable.run();
+        return (System.nanoTime() - start) / 1000000;
+    }
+}
@@ -0,0 +1,81 @@
+package org.horaapps.leafpic.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Differential test of {@link NumericComparator} against {@link LegacyNumericComparator}, the
+ * implementation it replaced: every pair of a corpus of names must compare with the same sign,
+ * through filevercmp and through the precomputed keys.
+ */
+public class NumericComparatorTest {
+
+    private static final String[] PREFIXES = {
+            "", ".", "..", ".hidden", "IMG_", "img", "DSC", "Screenshot_2018-", "VID_", "a", "A",
+            "/storage/emulated/0/DCIM/Camera/", "~", "α", "😀", "file-", "v"
+    };
+
+    private static final String[] SUFFIXES = {
+            "", ".jpg", ".JPG", ".tar.gz", ".~1~", "~", ".1", ".", ".mp4", ".a1", ".9a", "-1"
+    };
+
+    private static final String[] SPECIAL = {
+            "", ".", "..", "...", ".a", "..a", "a", "a.", "a..", "0", "00", "000", "01", "1", "10",
+            "1.0", "1.00", "1.1", "1.10", "a1", "a01", "a001", "a1b", "a10b", "a~", "a~1", "~a",
+            "IMG_1.jpg", "IMG_01.jpg", "IMG_10.jpg", "IMG_2.jpg", "IMG_2.JPG", "IMG_2.jpeg",
+            ".IMG_1.jpg", "IMG_1.tar.gz", "IMG_1.tar", "x.1~", "x.~1~", "x.a.b.c", "x.1.2.3"
+    };
+
+    private static final int GENERATED = 1200;
+
+    @Test
+    public void sameSignAsLegacy() {
+        List<String> corpus = corpus();
+        int n = corpus.size();
+        NumericComparator.Key[] keys = new NumericComparator.Key[n];
+        for (int i = 0; i < n; i++) keys[i] = new NumericComparator.Key(corpus.get(i));
+
+        for (int i = 0; i < n; i++) {
+            String a = corpus.get(i);
+            for (int j = 0; j < n; j++) {
+                String b = corpus.get(j);
+                int expected = Integer.signum(LegacyNumericComparator.filevercmp(a, b));
+                assertEquals(pair(a, b), expected, Integer.signum(NumericComparator.filevercmp(a, b)));
+                assertEquals(pair(a, b), expected, Integer.signum(NumericComparator.compare(keys[i], keys[j])));
+            }
+        }
+    }
+
+    /**
+     * The handwritten edge cases and names made of random prefixes, digit runs and suffixes.
+     */
+    static List<String> corpus() {
+        LinkedHashSet<String> corpus = new LinkedHashSet<>();
+        for (String s : SPECIAL) corpus.add(s);
+
+        Random random = new Random(32);
+        while (corpus.size() < SPECIAL.length + GENERATED) {
+            StringBuilder name = new StringBuilder(PREFIXES[random.nextInt(PREFIXES.length)]);
+            int parts = 1 + random.nextInt(3);
+            for (int p = 0; p < parts; p++) {
+                int zeros = random.nextInt(4) == 0 ? random.nextInt(3) : 0;
+                for (int z = 0; z < zeros; z++) name.append('0');
+                name.append(random.nextInt(p == 0 ? 10000 : 100));
+                if (p < parts - 1) name.append(random.nextBoolean() ? '_' : '.');
+            }
+            name.append(SUFFIXES[random.nextInt(SUFFIXES.length)]);
+            corpus.add(name.toString());
+        }
+        return new ArrayList<>(corpus);
+    }
+
+    private static String pair(String a, String b) {
+        return "\"" + a + "\" vs \"" + b + "\"";
+    }
+}